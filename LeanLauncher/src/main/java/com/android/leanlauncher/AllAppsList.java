@@ -43,6 +43,8 @@ class AllAppsList {
     public ArrayList<AppInfo> removed = new ArrayList<AppInfo>();
     /** The list of apps that have been modified since the last notify() call. */
     public ArrayList<AppInfo> modified = new ArrayList<AppInfo>();
+    /** Search index over the titles of {@link #data}. */
+    public final AppSearchIndex searchIndex = new AppSearchIndex();
 
     private IconCache mIconCache;
 
@@ -65,9 +67,11 @@ class AllAppsList {
         }
         data.add(info);
         added.add(info);
+        searchIndex.add(info);
     }
 
     public void clear() {
+        searchIndex.clear();
         data.clear();
         added.clear();
         removed.clear();
@@ -105,6 +109,7 @@ class AllAppsList {
             final ComponentName component = info.intent.getComponent();
             if (info.user.equals(user) && packageName.equals(component.getPackageName())) {
                 removed.add(info);
+                searchIndex.remove(info);
                 data.remove(i);
             }
         }
@@ -130,6 +135,7 @@ class AllAppsList {
                         && packageName.equals(component.getPackageName())) {
                     if (!findActivity(matches, component)) {
                         removed.add(applicationInfo);
+                        searchIndex.remove(applicationInfo);
                         mIconCache.remove(component, user);
                         data.remove(i);
                     }
@@ -147,6 +153,7 @@ class AllAppsList {
                 } else {
                     mIconCache.remove(applicationInfo.componentName, user);
                     mIconCache.getTitleAndIcon(applicationInfo, info, null);
+                    searchIndex.add(applicationInfo);
                     modified.add(applicationInfo);
                 }
             }
@@ -158,6 +165,7 @@ class AllAppsList {
                 if (user.equals(applicationInfo.user)
                         && packageName.equals(component.getPackageName())) {
                     removed.add(applicationInfo);
+                    searchIndex.remove(applicationInfo);
                     mIconCache.remove(component, user);
                     data.remove(i);
                 }
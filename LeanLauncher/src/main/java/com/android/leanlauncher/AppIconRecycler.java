@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of all apps icons, shared by the pages of {@link AppsCustomizePagedView}, so that a page
+ * which is synced again rebinds the icons of the pages torn down before it instead of inflating
+ * new ones. The icons inflated, reused instead of inflated, and dropped are counted in
+ * {@link LauncherTrace}.
+ */
+class AppIconRecycler {
+    private static final String TAG = "Launcher.AppIconRecycler";
+    private static final boolean DEBUG = false;
+
+    private final LayoutInflater mInflater;
+    private final ArrayList<BubbleTextView> mScrapViews = new ArrayList<BubbleTextView>();
+    private int mMaxScrapViews;
+
+    AppIconRecycler(LayoutInflater inflater, int maxScrapViews) {
+        mInflater = inflater;
+        mMaxScrapViews = maxScrapViews;
+    }
+
+    /**
+     * Sets the number of unused icons kept around, dropping the extra ones.
+     */
+    void setMaxScrapViews(int maxScrapViews) {
+        mMaxScrapViews = maxScrapViews;
+        while (mScrapViews.size() > maxScrapViews) {
+            mScrapViews.remove(mScrapViews.size() - 1);
+            LauncherTrace.incrementCounter(LauncherTrace.COUNTER_APP_ICONS_DROPPED);
+        }
+    }
+
+    /**
+     * Returns an unused icon if there is one, or inflates a new one otherwise. The icon is
+     * detached, and has to be bound by the caller.
+     */
+    BubbleTextView obtain(ViewGroup parent) {
+        final int count = mScrapViews.size();
+        if (count > 0) {
+            LauncherTrace.incrementCounter(LauncherTrace.COUNTER_APP_ICONS_REUSED);
+            return mScrapViews.remove(count - 1);
+        }
+        LauncherTrace.incrementCounter(LauncherTrace.COUNTER_APP_ICONS_INFLATED);
+        return (BubbleTextView) mInflater.inflate(R.layout.apps_customize_application, parent,
+                false);
+    }
+
+    /**
+     * Keeps an icon which has been removed from its page for reuse, if the pool isn't full.
+     */
+    void recycle(BubbleTextView icon) {
+        if (mScrapViews.size() >= mMaxScrapViews) {
+            LauncherTrace.incrementCounter(LauncherTrace.COUNTER_APP_ICONS_DROPPED);
+            return;
+        }
+
+        // Undo whatever state the page and the drag and drop left behind
+        icon.cancelLongPress();
+        icon.clearPressedBackground();
+        icon.setOnFocusChangeListener(null);
+        icon.setTag(null);
+        icon.setVisibility(View.VISIBLE);
+        icon.setAlpha(1f);
+        icon.setScaleX(1f);
+        icon.setScaleY(1f);
+        icon.setTranslationX(0f);
+        icon.setTranslationY(0f);
+        mScrapViews.add(icon);
+    }
+
+    void clear() {
+        if (DEBUG) {
+            Log.d(TAG, "Clearing " + mScrapViews.size() + " icons");
+        }
+        mScrapViews.clear();
+    }
+}
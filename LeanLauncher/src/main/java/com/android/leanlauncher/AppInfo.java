@@ -26,6 +26,8 @@ import com.android.leanlauncher.compat.LauncherActivityInfoCompat;
 import com.android.leanlauncher.compat.UserManagerCompat;
 import com.android.leanlauncher.compat.UserHandleCompat;
 
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -45,6 +47,8 @@ public class AppInfo extends ItemInfo {
 
     int flags = 0;
 
+    private final AppNameComparator.TitleKey mTitleKey = new AppNameComparator.TitleKey();
+
     AppInfo() {
         itemType = LauncherSettings.BaseLauncherColumns.ITEM_TYPE_SHORTCUT;
     }
@@ -88,6 +92,14 @@ public class AppInfo extends ItemInfo {
         flags = info.flags;
     }
 
+    /**
+     * Returns the collation key of the title for the collator, which is only computed again when
+     * the title or the collator change.
+     */
+    CollationKey getTitleKey(Collator collator) {
+        return mTitleKey.get(title, collator);
+    }
+
     @Override
     public String toString() {
         return "ApplicationInfo(title=" + title.toString() + " id=" + this.id
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Comparator;
+
+/**
+ * Compares apps by title, using the collation keys cached in the apps.
+ */
+final class AppNameComparator implements Comparator<AppInfo> {
+    static final AppNameComparator INSTANCE = new AppNameComparator();
+
+    // Collator of the app names, dropped on locale change so that the collation keys of the apps
+    // are computed again
+    private static volatile Collator sCollator;
+
+    private AppNameComparator() {
+    }
+
+    /**
+     * Returns the collator used to sort app names, for the current locale.
+     */
+    static Collator getCollator() {
+        Collator collator = sCollator;
+        if (collator == null) {
+            collator = Collator.getInstance();
+            sCollator = collator;
+        }
+        return collator;
+    }
+
+    /**
+     * Drops the collator, so that the next one follows the current locale.
+     */
+    static void resetCollator() {
+        sCollator = null;
+    }
+
+    @Override
+    public int compare(AppInfo a, AppInfo b) {
+        if (a.user.equals(b.user)) {
+            final Collator collator = getCollator();
+            int result = a.getTitleKey(collator).compareTo(b.getTitleKey(collator));
+            if (result == 0) {
+                result = a.componentName.compareTo(b.componentName);
+            }
+            return result;
+        } else {
+            // TODO Need to figure out rules for sorting
+            // profiles, this puts work second.
+            return a.user.toString().compareTo(b.user.toString());
+        }
+    }
+
+    /**
+     * Collation key of a title, which is only computed again when the title or the collator
+     * change. It is read and updated from several threads, so the key is published together with
+     * the title and collator it was computed for.
+     */
+    static class TitleKey {
+        private static final class Entry {
+            final CharSequence source;
+            final Collator collator;
+            final CollationKey key;
+
+            Entry(CharSequence source, Collator collator, CollationKey key) {
+                this.source = source;
+                this.collator = collator;
+                this.key = key;
+            }
+        }
+
+        private volatile Entry mEntry;
+
+        CollationKey get(CharSequence title, Collator collator) {
+            Entry entry = mEntry;
+            if (entry == null || entry.source != title || entry.collator != collator) {
+                final String source = title != null ? title.toString().trim() : "";
+                final CollationKey key;
+                // Collators aren't thread safe
+                synchronized (collator) {
+                    key = collator.getCollationKey(source);
+                }
+                entry = new Entry(title, collator, key);
+                mEntry = entry;
+            }
+            return entry.key;
+        }
+    }
+}
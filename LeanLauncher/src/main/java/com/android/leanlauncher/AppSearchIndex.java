@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.text.TextUtils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Search index over the titles of all apps, kept up to date by {@link AllAppsList}.
+ *
+ * Titles are lower cased and stripped of diacritics once, when an app is added or modified. Every
+ * substring of up to {@link #MAX_GRAM_LENGTH} characters of a title maps to the apps containing
+ * it, so a query only has to check the apps of its rarest gram. A query which extends the previous
+ * one only has to check the previous matches.
+ */
+public class AppSearchIndex {
+    private static final int MAX_GRAM_LENGTH = 3;
+
+    // Lower ranks are listed first
+    private static final int RANK_TITLE_PREFIX = 0;
+    private static final int RANK_WORD_PREFIX = 1;
+    private static final int RANK_CONTAINS = 2;
+    private static final int RANK_NONE = -1;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    private static class Entry {
+        final AppInfo app;
+        final String title;
+        // Offsets of the words of the title, including 0
+        final int[] wordStarts;
+
+        Entry(AppInfo app) {
+            this.app = app;
+            this.title = normalize(app.title);
+
+            int count = 0;
+            int[] starts = new int[title.length()];
+            for (int i = 0; i < title.length(); i++) {
+                if (Character.isLetterOrDigit(title.charAt(i))
+                        && (i == 0 || !Character.isLetterOrDigit(title.charAt(i - 1)))) {
+                    starts[count++] = i;
+                }
+            }
+            wordStarts = new int[count];
+            System.arraycopy(starts, 0, wordStarts, 0, count);
+        }
+
+        int rank(String query) {
+            if (title.startsWith(query)) {
+                return RANK_TITLE_PREFIX;
+            }
+            for (int start : wordStarts) {
+                if (title.startsWith(query, start)) {
+                    return RANK_WORD_PREFIX;
+                }
+            }
+            return title.contains(query) ? RANK_CONTAINS : RANK_NONE;
+        }
+    }
+
+    private static class Match {
+        final Entry entry;
+        final int rank;
+
+        Match(Entry entry, int rank) {
+            this.entry = entry;
+            this.rank = rank;
+        }
+    }
+
+    private static final Comparator<Match> MATCH_COMPARATOR = new Comparator<Match>() {
+        @Override
+        public int compare(Match a, Match b) {
+            if (a.rank != b.rank) {
+                return a.rank < b.rank ? -1 : 1;
+            }
+            return a.entry.title.compareTo(b.entry.title);
+        }
+    };
+
+    /**
+     * Matches of a query, which can be passed back to {@link #search} to narrow them down when
+     * the query is extended.
+     */
+    public static class Result {
+        private final String mQuery;
+        private final int mGeneration;
+        private final ArrayList<Match> mMatches;
+
+        private Result(String query, int generation, ArrayList<Match> matches) {
+            mQuery = query;
+            mGeneration = generation;
+            mMatches = matches;
+        }
+
+        public int size() {
+            return mMatches.size();
+        }
+
+        public ArrayList<AppInfo> getApps() {
+            ArrayList<AppInfo> apps = new ArrayList<AppInfo>(mMatches.size());
+            for (Match match : mMatches) {
+                apps.add(match.entry.app);
+            }
+            return apps;
+        }
+    }
+
+    private final HashMap<AppInfo, Entry> mEntries = new HashMap<AppInfo, Entry>();
+    private final HashMap<String, HashSet<Entry>> mGrams = new HashMap<String, HashSet<Entry>>();
+    // Changes whenever an app is added, removed or modified, so that stale results aren't narrowed
+    private int mGeneration;
+
+    /**
+     * Adds the app to the index, or re-indexes it if its title has changed.
+     */
+    public synchronized void add(AppInfo app) {
+        Entry old = mEntries.get(app);
+        if (old != null) {
+            if (old.title.equals(normalize(app.title))) {
+                return;
+            }
+            removeEntry(old);
+        }
+
+        Entry entry = new Entry(app);
+        mEntries.put(app, entry);
+        for (String gram : getGrams(entry.title)) {
+            HashSet<Entry> posting = mGrams.get(gram);
+            if (posting == null) {
+                posting = new HashSet<Entry>();
+                mGrams.put(gram, posting);
+            }
+            posting.add(entry);
+        }
+        mGeneration++;
+    }
+
+    public synchronized void remove(AppInfo app) {
+        Entry entry = mEntries.get(app);
+        if (entry != null) {
+            removeEntry(entry);
+            mGeneration++;
+        }
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mGrams.clear();
+        mGeneration++;
+    }
+
+    private void removeEntry(Entry entry) {
+        mEntries.remove(entry.app);
+        for (String gram : getGrams(entry.title)) {
+            HashSet<Entry> posting = mGrams.get(gram);
+            if (posting != null) {
+                posting.remove(entry);
+                if (posting.isEmpty()) {
+                    mGrams.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the apps whose title contains the query, apps whose title or one of its words starts
+     * with the query first.
+     *
+     * @param previous the result of the previous query, or null
+     */
+    public synchronized Result search(CharSequence query, Result previous) {
+        final String normalized = normalize(query);
+        final ArrayList<Match> matches = new ArrayList<Match>();
+        if (normalized.isEmpty()) {
+            return new Result(normalized, mGeneration, matches);
+        }
+
+        Collection<Entry> candidates;
+        if (previous != null && previous.mGeneration == mGeneration
+                && normalized.startsWith(previous.mQuery) && !previous.mQuery.isEmpty()) {
+            ArrayList<Entry> narrowed = new ArrayList<Entry>(previous.mMatches.size());
+            for (Match match : previous.mMatches) {
+                narrowed.add(match.entry);
+            }
+            candidates = narrowed;
+        } else {
+            candidates = getCandidates(normalized);
+        }
+
+        for (Entry entry : candidates) {
+            int rank = entry.rank(normalized);
+            if (rank != RANK_NONE) {
+                matches.add(new Match(entry, rank));
+            }
+        }
+        Collections.sort(matches, MATCH_COMPARATOR);
+        return new Result(normalized, mGeneration, matches);
+    }
+
+    /**
+     * Returns the entries of the rarest gram of the query, which contain every match.
+     */
+    private Collection<Entry> getCandidates(String query) {
+        final int length = Math.min(query.length(), MAX_GRAM_LENGTH);
+        HashSet<Entry> rarest = null;
+        for (int i = 0; i + length <= query.length(); i++) {
+            HashSet<Entry> posting = mGrams.get(query.substring(i, i + length));
+            if (posting == null) {
+                return Collections.emptyList();
+            }
+            if (rarest == null || posting.size() < rarest.size()) {
+                rarest = posting;
+            }
+        }
+        return rarest;
+    }
+
+    private static HashSet<String> getGrams(String title) {
+        HashSet<String> grams = new HashSet<String>();
+        for (int i = 0; i < title.length(); i++) {
+            for (int j = i + 1; j <= Math.min(i + MAX_GRAM_LENGTH, title.length()); j++) {
+                grams.add(title.substring(i, j));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Lower cases the text and strips its diacritics, so that "e" also matches an accented "e".
+     */
+    static String normalize(CharSequence text) {
+        if (TextUtils.isEmpty(text)) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.getDefault());
+    }
+}
@@ -22,9 +22,11 @@ import android.view.View;
 public class AppsCustomizeCellLayout extends CellLayout implements Page {
 
     final FocusIndicatorView mFocusHandlerView;
+    private final AppIconRecycler mIconRecycler;
 
-    public AppsCustomizeCellLayout(Context context) {
+    public AppsCustomizeCellLayout(Context context, AppIconRecycler iconRecycler) {
         super(context);
+        mIconRecycler = iconRecycler;
 
         mFocusHandlerView = new FocusIndicatorView(context);
         addView(mFocusHandlerView, 0);
@@ -34,6 +36,14 @@ public class AppsCustomizeCellLayout extends CellLayout implements Page {
 
     @Override
     public void removeAllViewsOnPage() {
+        ShortcutAndWidgetContainer container = getShortcutsAndWidgets();
+        int count = container.getChildCount();
+        for (int i = 0; i < count; i++) {
+            View child = container.getChildAt(i);
+            if (child instanceof BubbleTextView) {
+                mIconRecycler.recycle((BubbleTextView) child);
+            }
+        }
         removeAllViews();
         setLayerType(LAYER_TYPE_NONE, null);
     }
@@ -21,6 +21,7 @@ import android.animation.ValueAnimator;
 import android.appwidget.AppWidgetHostView;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.pm.PackageManager;
@@ -31,10 +32,8 @@ import android.graphics.Bitmap;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Process;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Gravity;
@@ -53,98 +52,17 @@ import com.android.leanlauncher.compat.UserHandleCompat;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-
-/**
- * A simple callback interface which also provides the results of the task.
- */
-interface AsyncTaskCallback {
-    void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data);
-}
-
-/**
- * The data needed to perform either of the custom AsyncTasks.
- */
-class AsyncTaskPageData {
-    enum Type {
-        LoadWidgetPreviewData
-    }
-
-    AsyncTaskPageData(int p, ArrayList<Object> l, int cw, int ch, AsyncTaskCallback bgR,
-            AsyncTaskCallback postR, WidgetPreviewLoader w) {
-        page = p;
-        items = l;
-        generatedImages = new ArrayList<Bitmap>();
-        maxImageWidth = cw;
-        maxImageHeight = ch;
-        doInBackgroundCallback = bgR;
-        postExecuteCallback = postR;
-        widgetPreviewLoader = w;
-    }
-    void cleanup(boolean cancelled) {
-        // Clean up any references to source/generated bitmaps
-        if (generatedImages != null) {
-            if (cancelled) {
-                for (int i = 0; i < generatedImages.size(); i++) {
-                    widgetPreviewLoader.recycleBitmap(items.get(i), generatedImages.get(i));
-                }
-            }
-            generatedImages.clear();
-        }
-    }
-    int page;
-    ArrayList<Object> items;
-    ArrayList<Bitmap> sourceImages;
-    ArrayList<Bitmap> generatedImages;
-    int maxImageWidth;
-    int maxImageHeight;
-    AsyncTaskCallback doInBackgroundCallback;
-    AsyncTaskCallback postExecuteCallback;
-    WidgetPreviewLoader widgetPreviewLoader;
-}
-
-/**
- * A generic template for an async task used in AppsCustomize.
- */
-class AppsCustomizeAsyncTask extends AsyncTask<AsyncTaskPageData, Void, AsyncTaskPageData> {
-    AppsCustomizeAsyncTask(int p, AsyncTaskPageData.Type ty) {
-        page = p;
-        threadPriority = Process.THREAD_PRIORITY_DEFAULT;
-        dataType = ty;
-    }
-    @Override
-    protected AsyncTaskPageData doInBackground(AsyncTaskPageData... params) {
-        if (params.length != 1) return null;
-        // Load each of the widget previews in the background
-        params[0].doInBackgroundCallback.run(this, params[0]);
-        return params[0];
-    }
-    @Override
-    protected void onPostExecute(AsyncTaskPageData result) {
-        // All the widget previews are loaded, so we can just callback to inflate the page
-        result.postExecuteCallback.run(this, result);
-    }
-
-    void setThreadPriority(int p) {
-        threadPriority = p;
-    }
-    void syncThreadPriority() {
-        Process.setThreadPriority(threadPriority);
-    }
-
-    // The page that this async task is associated with
-    AsyncTaskPageData.Type dataType;
-    int page;
-    int threadPriority;
-}
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * The Apps/Customize page that displays all the applications, widgets, and shortcuts.
  */
 public class AppsCustomizePagedView extends PagedViewWithDraggableItems implements
         View.OnClickListener, View.OnKeyListener, DragSource,
-        PagedViewWidget.ShortPressListener, LauncherTransitionable {
+        PagedViewWidget.ShortPressListener, LauncherTransitionable,
+        WidgetPreviewScheduler.Callback, TrimmableCache {
     static final String TAG = "AppsCustomizePagedView";
 
     private static Rect sTmpRect = new Rect();
@@ -169,10 +87,14 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
     // Content
     private ArrayList<AppInfo> mApps;
+    // mApps by component, for all users
+    private final HashMap<ComponentName, ArrayList<AppInfo>> mAppsByComponent =
+            new HashMap<ComponentName, ArrayList<AppInfo>>();
     private ArrayList<Object> mWidgets;
 
     // Caching
     private IconCache mIconCache;
+    private final AppIconRecycler mIconRecycler;
 
     // Dimens
     private int mContentWidth, mContentHeight;
@@ -183,8 +105,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     private Rect mAllAppsPadding = new Rect();
 
     // Previews & outlines
-    ArrayList<AppsCustomizeAsyncTask> mRunningTasks;
-    private static final int sPageSleepDelay = 200;
+    private WidgetPreviewScheduler mWidgetPreviewScheduler;
 
     private Runnable mInflateWidgetRunnable = null;
     private Runnable mBindWidgetRunnable = null;
@@ -202,8 +123,9 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
     // Deferral of loading widget previews during launcher transitions
     private boolean mInTransition;
-    private ArrayList<AsyncTaskPageData> mDeferredSyncWidgetPageItems =
-        new ArrayList<AsyncTaskPageData>();
+    private ArrayList<WidgetPreviewScheduler.Request> mDeferredPreviewRequests =
+        new ArrayList<WidgetPreviewScheduler.Request>();
+    private ArrayList<Bitmap> mDeferredPreviews = new ArrayList<Bitmap>();
     private ArrayList<Runnable> mDeferredPrepareLoadWidgetPreviewsTasks =
         new ArrayList<Runnable>();
 
@@ -215,11 +137,11 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     public AppsCustomizePagedView(Context context, AttributeSet attrs) {
         super(context, attrs);
         mLayoutInflater = LayoutInflater.from(context);
+        mIconRecycler = new AppIconRecycler(mLayoutInflater, 0);
         mPackageManager = context.getPackageManager();
         mApps = new ArrayList<AppInfo>();
         mWidgets = new ArrayList<Object>();
         mIconCache = (LauncherAppState.getInstance()).getIconCache();
-        mRunningTasks = new ArrayList<AppsCustomizeAsyncTask>();
 
         // Save the default widget preview background
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.AppsCustomizePagedView, 0, 0);
@@ -273,6 +195,13 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         return mWidgetPreviewLoader;
     }
 
+    private WidgetPreviewScheduler getWidgetPreviewScheduler() {
+        if (mWidgetPreviewScheduler == null) {
+            mWidgetPreviewScheduler = new WidgetPreviewScheduler(getWidgetPreviewLoader(), this);
+        }
+        return mWidgetPreviewScheduler;
+    }
+
     /** Returns the item index of the center item on this page so that we can restore to this
      *  item index when we rotate. */
     private int getMiddleComponentIndexOnCurrentPage() {
@@ -345,6 +274,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         mCellCountX = grid.allAppsNumCols;
         mCellCountY = grid.allAppsNumRows;
         updatePageCounts();
+        mIconRecycler.setMaxScrapViews(mCellCountX * mCellCountY
+                * getResources().getInteger(R.integer.config_appsCustomizeRecycledIconPages));
 
         // Force a measure to update recalculate the gaps
         mContentWidth = getMeasuredWidth() - getPaddingLeft() - getPaddingRight();
@@ -761,10 +692,11 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     @Override
     public void onLauncherTransitionEnd(Launcher l, boolean animated, boolean toWorkspace) {
         mInTransition = false;
-        for (AsyncTaskPageData d : mDeferredSyncWidgetPageItems) {
-            onSyncWidgetPageItems(d, false);
+        for (int i = 0; i < mDeferredPreviewRequests.size(); i++) {
+            onPreviewLoaded(mDeferredPreviewRequests.get(i), mDeferredPreviews.get(i));
         }
-        mDeferredSyncWidgetPageItems.clear();
+        mDeferredPreviewRequests.clear();
+        mDeferredPreviews.clear();
         for (Runnable r : mDeferredPrepareLoadWidgetPreviewsTasks) {
             r.run();
         }
@@ -844,6 +776,31 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     public void trimMemory() {
         super.trimMemory();
         clearAllWidgetPages();
+        mIconRecycler.clear();
+    }
+
+    @Override
+    public String getCacheName() {
+        return "widgetPreviews";
+    }
+
+    @Override
+    public long getCacheSizeBytes() {
+        return mWidgetPreviewLoader != null ? mWidgetPreviewLoader.getSizeBytes() : 0;
+    }
+
+    /**
+     * Lets go of the widget pages and the recycled icons once the UI is hidden, then shrinks the
+     * cached widget previews. The pages are loaded again when the UI is shown.
+     */
+    @Override
+    public void trimCache(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            trimMemory();
+        }
+        if (mWidgetPreviewLoader != null) {
+            mWidgetPreviewLoader.trimMemory(level);
+        }
     }
 
     public void clearAllWidgetPages() {
@@ -859,24 +816,47 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     }
 
     private void cancelAllTasks() {
-        // Clean up all the async tasks
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = iter.next();
-            task.cancel(false);
-            iter.remove();
-            mDirtyPageContent.set(task.page, true);
-
-            // We've already preallocated the views for the data to load into, so clear them as well
-            View v = getPageAt(task.page);
-            if (v instanceof PagedViewGridLayout) {
-                ((PagedViewGridLayout) v).removeAllViewsOnPage();
-            }
+        // Cancel the previews which haven't been delivered yet
+        cancelPreviewsOutside(Integer.MAX_VALUE, Integer.MIN_VALUE);
+        if (mWidgetPreviewScheduler != null) {
+            // Requests of pages which were removed
+            mWidgetPreviewScheduler.cancelAll();
+        }
+        for (int i = 0; i < mDeferredPreviewRequests.size(); i++) {
+            WidgetPreviewScheduler.Request request = mDeferredPreviewRequests.get(i);
+            getWidgetPreviewLoader().recycleBitmap(request.item, mDeferredPreviews.get(i));
+            clearWidgetPage(request.page);
         }
-        mDeferredSyncWidgetPageItems.clear();
+        mDeferredPreviewRequests.clear();
+        mDeferredPreviews.clear();
         mDeferredPrepareLoadWidgetPreviewsTasks.clear();
     }
 
+    /**
+     * Cancels the previews of the pages outside the given range. The pages are cleared, since
+     * their widgets were already created, and synced again when they are next shown.
+     */
+    private void cancelPreviewsOutside(int lowerPage, int upperPage) {
+        if (mWidgetPreviewScheduler == null) return;
+        int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            if ((i < lowerPage || i > upperPage)
+                    && mWidgetPreviewScheduler.hasPendingRequests(i)) {
+                mWidgetPreviewScheduler.cancelPage(i);
+                clearWidgetPage(i);
+            }
+        }
+    }
+
+    private void clearWidgetPage(int page) {
+        if (page >= getChildCount()) return;
+        mDirtyPageContent.set(page, true);
+        View v = getPageAt(page);
+        if (v instanceof PagedViewGridLayout) {
+            ((PagedViewGridLayout) v).removeAllViewsOnPage();
+        }
+    }
+
     public void setContentType(ContentType type) {
         // Widgets appear to be cleared every time you leave, always force invalidate for them
         if (mContentType != type || type == ContentType.Widgets) {
@@ -893,15 +873,12 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     protected void snapToPage(int whichPage, int delta, int duration) {
         super.snapToPage(whichPage, delta, duration);
 
-        // Update the thread priorities given the direction lookahead
-        for (AppsCustomizeAsyncTask task : mRunningTasks) {
-            int pageIndex = task.page;
-            if ((mNextPage > mCurrentPage && pageIndex >= mCurrentPage) ||
-                    (mNextPage < mCurrentPage && pageIndex <= mCurrentPage)) {
-                task.setThreadPriority(getThreadPriorityForPage(pageIndex));
-            } else {
-                task.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
-            }
+        // Load the previews of the page we are going to first, and drop those of the pages
+        // flung past
+        if (mWidgetPreviewScheduler != null) {
+            mWidgetPreviewScheduler.setTargetPage(whichPage);
+            cancelPreviewsOutside(getAssociatedLowerPageBound(whichPage),
+                    getAssociatedUpperPageBound(whichPage));
         }
     }
 
@@ -950,124 +927,104 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
         layout.removeAllViewsOnPage();
         for (int i = startIndex; i < endIndex; ++i) {
-            AppInfo info = mApps.get(i);
-            BubbleTextView icon = (BubbleTextView) mLayoutInflater.inflate(
-                    R.layout.apps_customize_application, layout, false);
-            icon.applyFromApplicationInfo(info, false);
-            icon.setOnClickListener(mLauncher);
-            icon.setOnLongClickListener(this);
-            icon.setOnTouchListener(this);
-            icon.setOnKeyListener(this);
-            icon.setOnFocusChangeListener(layout.mFocusHandlerView);
-
             int index = i - startIndex;
             int x = index % mCellCountX;
             int y = index / mCellCountX;
             if (isRtl) {
                 x = mCellCountX - x - 1;
             }
-            layout.addViewToCellLayout(icon, -1, i, new CellLayout.LayoutParams(x,y, 1,1), false);
+            addAppIcon(layout, mApps.get(i), i, x, y);
         }
 
         enableHwLayersOnVisiblePages();
     }
 
-    /**
-     * A helper to return the priority for loading of the specified widget page.
-     */
-    private int getWidgetPageLoadPriority(int page) {
-        // If we are snapping to another page, use that index as the target page index
-        int toPage = mCurrentPage;
-        if (mNextPage > -1) {
-            toPage = mNextPage;
-        }
-
-        // We use the distance from the target page as an initial guess of priority, but if there
-        // are no pages of higher priority than the page specified, then bump up the priority of
-        // the specified page.
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        int minPageDiff = Integer.MAX_VALUE;
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = iter.next();
-            minPageDiff = Math.abs(task.page - toPage);
-        }
-
-        int rawPageDiff = Math.abs(page - toPage);
-        return rawPageDiff - Math.min(rawPageDiff, minPageDiff);
+    private void addAppIcon(AppsCustomizeCellLayout layout, AppInfo info, int id, int x, int y) {
+        BubbleTextView icon = mIconRecycler.obtain(layout);
+        icon.applyFromApplicationInfo(info, false);
+        icon.setOnClickListener(mLauncher);
+        icon.setOnLongClickListener(this);
+        icon.setOnTouchListener(this);
+        icon.setOnKeyListener(this);
+        icon.setOnFocusChangeListener(layout.mFocusHandlerView);
+        layout.addViewToCellLayout(icon, -1, id, new CellLayout.LayoutParams(x,y, 1,1), false);
     }
+
     /**
-     * Return the appropriate thread priority for loading for a given page (we give the current
-     * page much higher priority)
+     * Brings the icons of a loaded page in line with mApps, rebinding only the cells whose app
+     * changed.
+     *
+     * @param changed the apps whose icon or title changed, which are rebound even if they didn't
+     *        move
      */
-    private int getThreadPriorityForPage(int page) {
-        // TODO-APPS_CUSTOMIZE: detect number of cores and set thread priorities accordingly below
-        int pageDiff = getWidgetPageLoadPriority(page);
-        if (pageDiff <= 0) {
-            return Process.THREAD_PRIORITY_LESS_FAVORABLE;
-        } else if (pageDiff <= 1) {
-            return Process.THREAD_PRIORITY_LOWEST;
-        } else {
-            return Process.THREAD_PRIORITY_LOWEST;
+    private void rebindAppsPageItems(int page, HashSet<AppInfo> changed) {
+        final boolean isRtl = isLayoutRtl();
+        int numCells = mCellCountX * mCellCountY;
+        int startIndex = page * numCells;
+        AppsCustomizeCellLayout layout = (AppsCustomizeCellLayout) getPageAt(page);
+
+        for (int index = 0; index < numCells; ++index) {
+            int i = startIndex + index;
+            int x = index % mCellCountX;
+            int y = index / mCellCountX;
+            if (isRtl) {
+                x = mCellCountX - x - 1;
+            }
+            View child = layout.getChildAt(x, y);
+            AppInfo info = i < mApps.size() ? mApps.get(i) : null;
+            if (info == null) {
+                if (child instanceof BubbleTextView) {
+                    layout.removeView(child);
+                    mIconRecycler.recycle((BubbleTextView) child);
+                }
+            } else if (child == null) {
+                addAppIcon(layout, info, i, x, y);
+            } else if (child.getTag() != info || changed.contains(info)) {
+                ((BubbleTextView) child).applyFromApplicationInfo(info, false);
+                child.setId(i);
+            }
         }
     }
-    private int getSleepForPage(int page) {
-        int pageDiff = getWidgetPageLoadPriority(page);
-        return Math.max(0, pageDiff * sPageSleepDelay);
-    }
+
     /**
-     * Creates and executes a new AsyncTask to load a page of widget previews.
+     * Queues the loading of the previews of a page of widgets. The previews are prioritized, and
+     * those of other pages cancelled, around the page being loaded, which is the page scrolled to
+     * rather than the current page while the pages scroll.
      */
-    private void prepareLoadWidgetPreviewsTask(int page, ArrayList<Object> widgets,
-            int cellWidth, int cellHeight, int cellCountX) {
-
-        // Prune all tasks that are no longer needed
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = iter.next();
-            int taskPage = task.page;
-            if (taskPage < getAssociatedLowerPageBound(mCurrentPage) ||
-                    taskPage > getAssociatedUpperPageBound(mCurrentPage)) {
-                task.cancel(false);
-                iter.remove();
-            } else {
-                task.setThreadPriority(getThreadPriorityForPage(taskPage));
+    private void loadWidgetPreviews(int page, PagedViewGridLayout layout,
+            ArrayList<Object> items) {
+        WidgetPreviewScheduler scheduler = getWidgetPreviewScheduler();
+        final int targetPage = getNextPage();
+        scheduler.setTargetPage(targetPage);
+        cancelPreviewsOutside(getAssociatedLowerPageBound(targetPage),
+                getAssociatedUpperPageBound(targetPage));
+
+        int count = items.size();
+        for (int i = 0; i < count; ++i) {
+            PagedViewWidget widget = (PagedViewWidget) layout.getChildAt(i);
+            if (widget != null) {
+                scheduler.load(page, i, items.get(i), widget);
             }
         }
+    }
 
-        // We introduce a slight delay to order the loading of side pages so that we don't thrash
-        final int sleepMs = getSleepForPage(page);
-        AsyncTaskPageData pageData = new AsyncTaskPageData(page, widgets, cellWidth, cellHeight,
-            new AsyncTaskCallback() {
-                @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
-                    try {
-                        try {
-                            Thread.sleep(sleepMs);
-                        } catch (Exception e) {}
-                        loadWidgetPreviewsInBackground(task, data);
-                    } finally {
-                        if (task.isCancelled()) {
-                            data.cleanup(true);
-                        }
-                    }
-                }
-            },
-            new AsyncTaskCallback() {
-                @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
-                    mRunningTasks.remove(task);
-                    if (task.isCancelled()) return;
-                    // do cleanup inside onSyncWidgetPageItems
-                    onSyncWidgetPageItems(data, false);
-                }
-            }, getWidgetPreviewLoader());
+    @Override
+    public void onPreviewLoaded(WidgetPreviewScheduler.Request request, Bitmap preview) {
+        if (mInTransition) {
+            mDeferredPreviewRequests.add(request);
+            mDeferredPreviews.add(preview);
+            return;
+        }
+        if (request.widget.getParent() != getPageAt(request.page)) {
+            // The page was cleared since
+            getWidgetPreviewLoader().recycleBitmap(request.item, preview);
+            return;
+        }
+        request.widget.applyPreview(new FastBitmapDrawable(preview), request.index);
 
-        // Ensure that the task is appropriately prioritized and runs in parallel
-        AppsCustomizeAsyncTask t = new AppsCustomizeAsyncTask(page,
-                AsyncTaskPageData.Type.LoadWidgetPreviewData);
-        t.setThreadPriority(getThreadPriorityForPage(page));
-        t.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, pageData);
-        mRunningTasks.add(t);
+        if (!mWidgetPreviewScheduler.hasPendingRequests(request.page)) {
+            enableHwLayersOnVisiblePages();
+        }
     }
 
     /*
@@ -1086,6 +1043,9 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         int numItemsPerPage = mWidgetCountX * mWidgetCountY;
 
         final PagedViewGridLayout layout = (PagedViewGridLayout) getPageAt(page);
+        if (mWidgetPreviewScheduler != null) {
+            mWidgetPreviewScheduler.cancelPage(page);
+        }
 
         // Calculate the dimensions of each cell we are giving to each widget
         final ArrayList<Object> items = new ArrayList<Object>();
@@ -1179,90 +1139,43 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                 getWidgetPreviewLoader().setPreviewSize(
                         maxPreviewWidth, maxPreviewHeight, mWidgetSpacingLayout);
                 if (immediate) {
-                    AsyncTaskPageData data = new AsyncTaskPageData(page, items,
-                            maxPreviewWidth, maxPreviewHeight, null, null, getWidgetPreviewLoader());
-                    loadWidgetPreviewsInBackground(null, data);
-                    onSyncWidgetPageItems(data, immediate);
+                    for (int i = 0; i < items.size(); ++i) {
+                        PagedViewWidget widget = (PagedViewWidget) layout.getChildAt(i);
+                        Bitmap preview = getWidgetPreviewLoader().getPreview(items.get(i));
+                        widget.applyPreview(new FastBitmapDrawable(preview), i);
+                    }
+                    enableHwLayersOnVisiblePages();
                 } else {
                     if (mInTransition) {
                         mDeferredPrepareLoadWidgetPreviewsTasks.add(this);
                     } else {
-                        prepareLoadWidgetPreviewsTask(page, items,
-                                maxPreviewWidth, maxPreviewHeight, mWidgetCountX);
+                        loadWidgetPreviews(page, layout, items);
                     }
                 }
                 layout.setOnLayoutListener(null);
             }
         });
     }
-    private void loadWidgetPreviewsInBackground(AppsCustomizeAsyncTask task,
-            AsyncTaskPageData data) {
-        // loadWidgetPreviewsInBackground can be called without a task to load a set of widget
-        // previews synchronously
-        if (task != null) {
-            // Ensure that this task starts running at the correct priority
-            task.syncThreadPriority();
-        }
-
-        // Load each of the widget/shortcut previews
-        ArrayList<Object> items = data.items;
-        ArrayList<Bitmap> images = data.generatedImages;
-        int count = items.size();
-        for (int i = 0; i < count; ++i) {
-            if (task != null) {
-                // Ensure we haven't been cancelled yet
-                if (task.isCancelled()) break;
-                // Before work on each item, ensure that this task is running at the correct
-                // priority
-                task.syncThreadPriority();
-            }
-
-            images.add(getWidgetPreviewLoader().getPreview(items.get(i)));
-        }
-    }
-
-    private void onSyncWidgetPageItems(AsyncTaskPageData data, boolean immediatelySyncItems) {
-        if (!immediatelySyncItems && mInTransition) {
-            mDeferredSyncWidgetPageItems.add(data);
-            return;
-        }
-        try {
-            int page = data.page;
-            PagedViewGridLayout layout = (PagedViewGridLayout) getPageAt(page);
-
-            ArrayList<Object> items = data.items;
-            int count = items.size();
-            for (int i = 0; i < count; ++i) {
-                PagedViewWidget widget = (PagedViewWidget) layout.getChildAt(i);
-                if (widget != null) {
-                    Bitmap preview = data.generatedImages.get(i);
-                    widget.applyPreview(new FastBitmapDrawable(preview), i);
-                }
-            }
-
-            enableHwLayersOnVisiblePages();
-
-            // Update all thread priorities
-            for (AppsCustomizeAsyncTask task : mRunningTasks) {
-                int pageIndex = task.page;
-                task.setThreadPriority(getThreadPriorityForPage(pageIndex));
-            }
-        } finally {
-            data.cleanup(false);
-        }
-    }
-
     @Override
     public void syncPages() {
         disablePagedViewAnimations();
 
+        // Keep the icons of the old pages for the new ones
+        int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            View v = getPageAt(i);
+            if (v instanceof AppsCustomizeCellLayout) {
+                ((AppsCustomizeCellLayout) v).removeAllViewsOnPage();
+            }
+        }
         removeAllViews();
         cancelAllTasks();
 
         Context context = getContext();
         if (mContentType == ContentType.Applications) {
             for (int i = 0; i < mNumAppsPages; ++i) {
-                AppsCustomizeCellLayout layout = new AppsCustomizeCellLayout(context);
+                AppsCustomizeCellLayout layout = new AppsCustomizeCellLayout(context,
+                        mIconRecycler);
                 setupPage(layout);
                 addView(layout, new PagedView.LayoutParams(LayoutParams.MATCH_PARENT,
                         LayoutParams.MATCH_PARENT));
@@ -1398,57 +1311,152 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     public void setApps(ArrayList<AppInfo> list) {
         mApps = list;
         Collections.sort(mApps, LauncherModel.getAppNameComparator());
+        mAppsByComponent.clear();
+        for (AppInfo info : mApps) {
+            indexApp(info);
+        }
         updatePageCountsAndInvalidateData();
     }
-    private void addAppsWithoutInvalidate(ArrayList<AppInfo> list) {
-        // We add it in place, in alphabetical order
-        int count = list.size();
-        for (int i = 0; i < count; ++i) {
-            AppInfo info = list.get(i);
-            int index = Collections.binarySearch(mApps, info, LauncherModel.getAppNameComparator());
-            if (index < 0) {
-                mApps.add(-(index + 1), info);
+
+    private AppInfo findApp(ComponentName cn, UserHandleCompat user) {
+        ArrayList<AppInfo> apps = mAppsByComponent.get(cn);
+        if (apps != null) {
+            for (AppInfo info : apps) {
+                if (info.user.equals(user)) {
+                    return info;
+                }
             }
         }
+        return null;
     }
-    public void addApps(ArrayList<AppInfo> list) {
-        addAppsWithoutInvalidate(list);
-        updatePageCountsAndInvalidateData();
-    }
-    private int findAppByComponent(List<AppInfo> list, AppInfo item) {
-        ComponentName removeComponent = item.intent.getComponent();
-        int length = list.size();
-        for (int i = 0; i < length; ++i) {
-            AppInfo info = list.get(i);
-            if (info.user.equals(item.user)
-                    && info.intent.getComponent().equals(removeComponent)) {
-                return i;
-            }
+
+    private void indexApp(AppInfo info) {
+        ArrayList<AppInfo> apps = mAppsByComponent.get(info.componentName);
+        if (apps == null) {
+            apps = new ArrayList<AppInfo>(1);
+            mAppsByComponent.put(info.componentName, apps);
         }
-        return -1;
+        apps.add(info);
     }
-    private void removeAppsWithoutInvalidate(ArrayList<AppInfo> list) {
-        // loop through all the apps and remove apps that have the same component
-        int length = list.size();
-        for (int i = 0; i < length; ++i) {
-            AppInfo info = list.get(i);
-            int removeIndex = findAppByComponent(mApps, info);
-            if (removeIndex > -1) {
-                mApps.remove(removeIndex);
+
+    private void unindexApp(AppInfo info) {
+        ArrayList<AppInfo> apps = mAppsByComponent.get(info.componentName);
+        if (apps != null) {
+            apps.remove(info);
+            if (apps.isEmpty()) {
+                mAppsByComponent.remove(info.componentName);
             }
         }
     }
+
+    public void addApps(ArrayList<AppInfo> list) {
+        applyAppsDiff(null, list, null);
+    }
+
     public void removeApps(ArrayList<AppInfo> appInfos) {
-        removeAppsWithoutInvalidate(appInfos);
-        updatePageCountsAndInvalidateData();
+        applyAppsDiff(appInfos, null, null);
     }
+
     public void updateApps(ArrayList<AppInfo> list) {
-        // We remove and re-add the updated applications list because it's properties may have
-        // changed (ie. the title), and this will ensure that the items will be in their proper
-        // place in the list.
-        removeAppsWithoutInvalidate(list);
-        addAppsWithoutInvalidate(list);
-        updatePageCountsAndInvalidateData();
+        applyAppsDiff(null, null, list);
+    }
+
+    /**
+     * Applies a change of the apps to mApps, and rebinds only the icons of the loaded pages whose
+     * cells changed, unless the number of pages changed.
+     *
+     * @param removed the apps to remove, matched by component and user
+     * @param added the apps to insert in alphabetical order
+     * @param updated the apps whose properties changed (ie. the title or the icon), which are moved
+     *        if their place in the list changed
+     */
+    private void applyAppsDiff(ArrayList<AppInfo> removed, ArrayList<AppInfo> added,
+            ArrayList<AppInfo> updated) {
+        // The apps to take out of mApps, which are inserted back if they were updated. An updated
+        // app may be the same object as in mApps, in which case mApps isn't sorted anymore until
+        // it is taken out.
+        HashSet<AppInfo> outgoing = new HashSet<AppInfo>();
+        ArrayList<AppInfo> incoming = new ArrayList<AppInfo>();
+        HashSet<AppInfo> changed = new HashSet<AppInfo>();
+        if (removed != null) {
+            for (AppInfo info : removed) {
+                AppInfo existing = findApp(info.componentName, info.user);
+                if (existing != null) {
+                    outgoing.add(existing);
+                    unindexApp(existing);
+                }
+            }
+        }
+        if (added != null) {
+            incoming.addAll(added);
+        }
+        if (updated != null) {
+            incoming.addAll(updated);
+            changed.addAll(updated);
+        }
+        for (AppInfo info : incoming) {
+            AppInfo existing = findApp(info.componentName, info.user);
+            if (existing != null) {
+                outgoing.add(existing);
+                unindexApp(existing);
+            }
+        }
+
+        // Take out all the outgoing apps in one pass
+        if (!outgoing.isEmpty()) {
+            int count = mApps.size();
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                AppInfo info = mApps.get(i);
+                if (!outgoing.contains(info)) {
+                    mApps.set(kept++, info);
+                }
+            }
+            mApps.subList(kept, count).clear();
+        }
+
+        // We add them back in place, in alphabetical order
+        Comparator<AppInfo> comparator = LauncherModel.getAppNameComparator();
+        for (AppInfo info : incoming) {
+            if (findApp(info.componentName, info.user) != null) {
+                // Listed twice
+                continue;
+            }
+            int index = Collections.binarySearch(mApps, info, comparator);
+            mApps.add(index < 0 ? -(index + 1) : index, info);
+            indexApp(info);
+        }
+
+        int numAppsPages = (int) Math.ceil((float) mApps.size() / (mCellCountX * mCellCountY));
+        if (mInBulkBind || !isDataReady() || mNeedToUpdatePageCountsAndInvalidateData
+                || (mContentType == ContentType.Applications && numAppsPages != mNumAppsPages)) {
+            updatePageCountsAndInvalidateData();
+        } else if (mContentType == ContentType.Applications) {
+            final int count = getChildCount();
+            for (int i = 0; i < count; i++) {
+                // Pages outside the loaded window are synced when they are loaded again
+                if (!mDirtyPageContent.get(i)) {
+                    rebindAppsPageItems(i, changed);
+                }
+            }
+        } else {
+            // The apps pages are synced when the apps are shown again
+            updatePageCounts();
+        }
+    }
+
+    /**
+     * Returns the apps on the current page, or none if the widgets are shown.
+     */
+    ArrayList<AppInfo> getAppsOnCurrentPage() {
+        ArrayList<AppInfo> apps = new ArrayList<AppInfo>();
+        if (mContentType == ContentType.Applications && mCellCountX > 0) {
+            int numCells = mCellCountX * mCellCountY;
+            int startIndex = Math.min(getCurrentPage() * numCells, mApps.size());
+            int endIndex = Math.min(startIndex + numCells, mApps.size());
+            apps.addAll(mApps.subList(startIndex, endIndex));
+        }
+        return apps;
     }
 
     public void reset() {
@@ -1502,7 +1510,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
     /*
      * We load an extra page on each side to prevent flashes from scrolling and loading of the
-     * widget previews in the background with the AsyncTasks.
+     * widget previews in the background with the WidgetPreviewScheduler.
      */
     final static int sLookBehindPageCount = 2;
     final static int sLookAheadPageCount = 2;
@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.util.SparseIntArray;
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Queue of binding work to run on the main thread, in order. The work is run on each frame until
+ * the frame budget is spent, and the budget follows whether the frames which ran it were
+ * dropped. Batches of items are split to fit the budget, after the measured cost of an item.
+ *
+ * Work can be posted from any thread. Items posted with {@link #postIdle} wait for the main
+ * thread to go idle once they reach the head of the queue.
+ */
+class BindScheduler {
+    private static final String TAG = "Launcher.BindScheduler";
+    private static final boolean DEBUG = false;
+
+    /**
+     * Work made of items which can be run a few at a time.
+     */
+    interface Batch {
+        /**
+         * Runs the items from start, inclusive, to end, exclusive.
+         */
+        void run(int start, int end);
+    }
+
+    private static final long NANOS_PER_MS = 1000000;
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000 / 60;
+    private static final long MIN_BUDGET_NANOS = 2 * NANOS_PER_MS;
+    private static final long BUDGET_STEP_NANOS = NANOS_PER_MS;
+    // Cost of an item of a batch until one has been measured
+    private static final long DEFAULT_NANOS_PER_ITEM = NANOS_PER_MS;
+    // Frames don't come while the screen is off, when the work is run on this delay instead
+    private static final long FRAME_TIMEOUT_MS = 100;
+
+    private static class Entry {
+        final Runnable runnable;
+        final Batch batch;
+        final int count;
+        final int type;
+        final boolean idle;
+        // The generations of the queue and of the type when posted, which cancelling bumps
+        final int generation;
+        final int typeGeneration;
+        // Next item of the batch to run
+        int next;
+
+        Entry(Runnable runnable, Batch batch, int count, int type, boolean idle,
+                int generation, int typeGeneration) {
+            this.runnable = runnable;
+            this.batch = batch;
+            this.count = count;
+            this.type = type;
+            this.idle = idle;
+            this.generation = generation;
+            this.typeGeneration = typeGeneration;
+        }
+
+        void runAll() {
+            if (batch != null) {
+                if (next < count) {
+                    batch.run(next, count);
+                    next = count;
+                }
+            } else {
+                runnable.run();
+            }
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // All of the following are guarded by mQueue
+    private final ArrayDeque<Entry> mQueue = new ArrayDeque<Entry>();
+    private final SparseIntArray mTypeGenerations = new SparseIntArray();
+    private int mGeneration;
+    private boolean mFrameScheduled;
+    private boolean mIdleScheduled;
+
+    // Only used on the main thread
+    private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    private long mBudgetNanos = DEFAULT_FRAME_INTERVAL_NANOS / 2;
+    private long mNanosPerItem = DEFAULT_NANOS_PER_ITEM;
+    // Time of the last frame which ran work, or 0 if the last frame didn't
+    private long mLastWorkFrameNanos;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mHandler.removeCallbacks(mFrameTimeout);
+            runFrame(frameTimeNanos, true);
+        }
+    };
+
+    private final Runnable mFrameTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            runFrame(System.nanoTime(), false);
+        }
+    };
+
+    private final Runnable mScheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            mHandler.postDelayed(mFrameTimeout, FRAME_TIMEOUT_MS);
+        }
+    };
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            Entry entry;
+            synchronized (mQueue) {
+                mIdleScheduled = false;
+                entry = peekLocked();
+                if (entry != null && entry.idle) {
+                    mQueue.removeFirst();
+                } else {
+                    entry = null;
+                }
+            }
+            if (entry != null) {
+                entry.runAll();
+            }
+            synchronized (mQueue) {
+                scheduleNextLocked();
+            }
+            return false;
+        }
+    };
+
+    private final Runnable mScheduleIdle = new Runnable() {
+        @Override
+        public void run() {
+            Looper.myQueue().addIdleHandler(mIdleHandler);
+        }
+    };
+
+    /** Schedule runnable to run after everything that's on the queue right now. */
+    void post(Runnable runnable) {
+        post(runnable, 0);
+    }
+
+    void post(Runnable runnable, int type) {
+        add(runnable, null, 0, type, false);
+    }
+
+    /**
+     * Schedule the items of the batch to run after everything that's on the queue right now, as
+     * many per frame as the budget allows.
+     */
+    void postBatch(Batch batch, int count, int type) {
+        if (count > 0) {
+            add(null, batch, count, type, false);
+        }
+    }
+
+    /** Schedule runnable to run when the queue goes idle. */
+    void postIdle(Runnable runnable) {
+        postIdle(runnable, 0);
+    }
+
+    void postIdle(Runnable runnable, int type) {
+        add(runnable, null, 0, type, true);
+    }
+
+    private void add(Runnable runnable, Batch batch, int count, int type, boolean idle) {
+        synchronized (mQueue) {
+            mQueue.addLast(new Entry(runnable, batch, count, type, idle, mGeneration,
+                    mTypeGenerations.get(type)));
+            scheduleNextLocked();
+        }
+    }
+
+    /**
+     * Drops the queued work of the type. The work is left in the queue, and skipped when it
+     * reaches the head.
+     */
+    void cancelAllRunnablesOfType(int type) {
+        synchronized (mQueue) {
+            mTypeGenerations.put(type, mTypeGenerations.get(type) + 1);
+        }
+    }
+
+    void cancel() {
+        synchronized (mQueue) {
+            mGeneration++;
+            mQueue.clear();
+        }
+    }
+
+    /** Runs all queued work from the calling thread. */
+    void flush() {
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        synchronized (mQueue) {
+            while (peekLocked() != null) {
+                entries.add(mQueue.removeFirst());
+            }
+        }
+        for (Entry entry : entries) {
+            entry.runAll();
+        }
+    }
+
+    private boolean isCancelledLocked(Entry entry) {
+        return entry.generation != mGeneration
+                || entry.typeGeneration != mTypeGenerations.get(entry.type);
+    }
+
+    /**
+     * Returns the head of the queue, once the cancelled work in front of it has been dropped.
+     */
+    private Entry peekLocked() {
+        Entry entry = mQueue.peekFirst();
+        while (entry != null && isCancelledLocked(entry)) {
+            mQueue.removeFirst();
+            entry = mQueue.peekFirst();
+        }
+        return entry;
+    }
+
+    private void scheduleNextLocked() {
+        final Entry next = peekLocked();
+        if (next == null) {
+            return;
+        }
+        if (next.idle) {
+            if (!mIdleScheduled) {
+                mIdleScheduled = true;
+                mHandler.post(mScheduleIdle);
+            }
+        } else if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            if (Looper.getMainLooper() == Looper.myLooper()) {
+                mScheduleFrame.run();
+            } else {
+                mHandler.post(mScheduleFrame);
+            }
+        }
+    }
+
+    private void runFrame(long frameTimeNanos, boolean vsync) {
+        synchronized (mQueue) {
+            mFrameScheduled = false;
+        }
+        if (vsync) {
+            adaptBudget(frameTimeNanos);
+        }
+
+        final long start = System.nanoTime();
+        final long deadline = start + mBudgetNanos;
+        int ran = 0;
+        LauncherTrace.beginSection(LauncherTrace.SECTION_BIND_FRAME);
+        try {
+            while (true) {
+                Entry entry;
+                synchronized (mQueue) {
+                    entry = peekLocked();
+                    if (entry == null || entry.idle) {
+                        break;
+                    }
+                    mQueue.removeFirst();
+                }
+
+                if (entry.batch != null) {
+                    runBatchSlice(entry, deadline - System.nanoTime());
+                    if (entry.next < entry.count) {
+                        synchronized (mQueue) {
+                            if (!isCancelledLocked(entry)) {
+                                mQueue.addFirst(entry);
+                            }
+                        }
+                    }
+                } else {
+                    entry.runnable.run();
+                }
+                ran++;
+
+                if (System.nanoTime() >= deadline) {
+                    break;
+                }
+            }
+        } finally {
+            LauncherTrace.endSection();
+        }
+
+        if (ran > 0) {
+            final long bindNanos = System.nanoTime() - start;
+            LauncherTrace.incrementCounter(LauncherTrace.COUNTER_BIND_FRAMES);
+            LauncherTrace.addToCounter(LauncherTrace.COUNTER_BIND_FRAME_MS,
+                    bindNanos / NANOS_PER_MS);
+            if (DEBUG) {
+                Log.d(TAG, "Ran " + ran + " bind tasks in " + bindNanos / 1000 + "us, budget "
+                        + mBudgetNanos / 1000 + "us, " + mNanosPerItem / 1000 + "us per item");
+            }
+            mLastWorkFrameNanos = vsync ? frameTimeNanos : 0;
+        } else {
+            mLastWorkFrameNanos = 0;
+        }
+
+        synchronized (mQueue) {
+            scheduleNextLocked();
+        }
+    }
+
+    /**
+     * Grows the budget while the frames which ran work come on time, and halves it when one of
+     * them was dropped.
+     */
+    private void adaptBudget(long frameTimeNanos) {
+        if (mLastWorkFrameNanos == 0) {
+            return;
+        }
+        final long interval = frameTimeNanos - mLastWorkFrameNanos;
+        if (interval <= 0) {
+            return;
+        }
+        // The shortest interval seen is the refresh period of the display
+        mFrameIntervalNanos = Math.min(mFrameIntervalNanos, interval);
+        if (interval > mFrameIntervalNanos * 3 / 2) {
+            mBudgetNanos = Math.max(MIN_BUDGET_NANOS, mBudgetNanos / 2);
+        } else {
+            mBudgetNanos = Math.max(MIN_BUDGET_NANOS,
+                    Math.min(mFrameIntervalNanos * 3 / 4, mBudgetNanos + BUDGET_STEP_NANOS));
+        }
+    }
+
+    /**
+     * Runs as many items of the batch as fit in the time left, and at least one.
+     */
+    private void runBatchSlice(Entry entry, long timeLeftNanos) {
+        final int items = (int) Math.min(entry.count - entry.next,
+                Math.max(1, timeLeftNanos / mNanosPerItem));
+        final long start = System.nanoTime();
+        entry.batch.run(entry.next, entry.next + items);
+        entry.next += items;
+
+        final long nanosPerItem = Math.max(1, (System.nanoTime() - start) / items);
+        mNanosPerItem = (mNanosPerItem * 3 + nanosPerItem) / 4;
+    }
+}
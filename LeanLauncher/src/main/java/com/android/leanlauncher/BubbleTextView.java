@@ -84,7 +84,11 @@ public class BubbleTextView extends TextView {
 
     public void applyFromShortcutInfo(ShortcutInfo info, IconCache iconCache,
             boolean setDefaultPadding, boolean hideText) {
-        Bitmap b = info.getIcon(iconCache);
+        applyFromShortcutInfo(info, info.getIcon(iconCache), setDefaultPadding, hideText);
+    }
+
+    public void applyFromShortcutInfo(ShortcutInfo info, Bitmap b,
+            boolean setDefaultPadding, boolean hideText) {
         LauncherAppState app = LauncherAppState.getInstance();
 
         FastBitmapDrawable iconDrawable = Utilities.createIconDrawable(b);
@@ -22,6 +22,7 @@ public class CheckLongPressHelper {
     private View mView;
     private boolean mHasPerformedLongPress;
     private CheckForLongPress mPendingCheckForLongPress;
+    private PrepareDragOutline mPendingPrepareDragOutline;
 
     class CheckForLongPress implements Runnable {
         public void run() {
@@ -35,6 +36,21 @@ public class CheckLongPressHelper {
         }
     }
 
+    /**
+     * Renders the drag outline of the view while the long press is pending, late enough that
+     * taps don't pay for it, and early enough for it to be ready when the drag begins.
+     */
+    class PrepareDragOutline implements Runnable {
+        public void run() {
+            if (mView.getParent() != null && mView.getContext() instanceof Launcher) {
+                Workspace workspace = ((Launcher) mView.getContext()).getWorkspace();
+                if (workspace != null) {
+                    workspace.prepareDragOutline(mView);
+                }
+            }
+        }
+    }
+
     public CheckLongPressHelper(View v) {
         mView = v;
     }
@@ -45,8 +61,13 @@ public class CheckLongPressHelper {
         if (mPendingCheckForLongPress == null) {
             mPendingCheckForLongPress = new CheckForLongPress();
         }
-        mView.postDelayed(mPendingCheckForLongPress,
-                LauncherAppState.getInstance().getLongPressTimeout());
+        final int longPressTimeout = LauncherAppState.getInstance().getLongPressTimeout();
+        mView.postDelayed(mPendingCheckForLongPress, longPressTimeout);
+
+        if (mPendingPrepareDragOutline == null) {
+            mPendingPrepareDragOutline = new PrepareDragOutline();
+        }
+        mView.postDelayed(mPendingPrepareDragOutline, longPressTimeout / 2);
     }
 
     public void cancelLongPress() {
@@ -55,6 +76,9 @@ public class CheckLongPressHelper {
             mView.removeCallbacks(mPendingCheckForLongPress);
             mPendingCheckForLongPress = null;
         }
+        if (mPendingPrepareDragOutline != null) {
+            mView.removeCallbacks(mPendingPrepareDragOutline);
+        }
     }
 
     public boolean hasPerformedLongPress() {
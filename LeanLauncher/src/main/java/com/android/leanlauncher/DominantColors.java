@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * Picks the dominant color of icons. Only depends on types which the benchmarks have stand-ins
+ * for, so that it can be benchmarked on the JVM.
+ */
+final class DominantColors {
+
+    private DominantColors() {
+    }
+
+    /**
+     * This picks a dominant color, looking for high-saturation, high-value, repeated hues.
+     * The sampled pixels are read a row at a time, and converted to HSV once.
+     * @param bitmap The bitmap to scan
+     * @param samples The approximate max number of samples to use.
+     */
+    static int findDominantColorByHue(Bitmap bitmap, int samples) {
+        final int height = bitmap.getHeight();
+        final int width = bitmap.getWidth();
+        int sampleStride = (int) Math.sqrt((height * width) / samples);
+        if (sampleStride < 1) {
+            sampleStride = 1;
+        }
+
+        final int sampleCount = ((width + sampleStride - 1) / sampleStride)
+                * ((height + sampleStride - 1) / sampleStride);
+        final int[] sampleColors = new int[sampleCount];
+        final int[] sampleHues = new int[sampleCount];
+        final int[] sampleBuckets = new int[sampleCount];
+        final float[] sampleScores = new float[sampleCount];
+        final int[] row = new int[width];
+
+        // This is an out-param, for getting the hsv values for an rgb
+        float[] hsv = new float[3];
+
+        // First get the best hue, by creating a histogram over 360 hue buckets,
+        // where each pixel contributes a score weighted by saturation, value, and alpha.
+        float[] hueScoreHistogram = new float[360];
+        float highScore = -1;
+        int bestHue = -1;
+
+        int sample = 0;
+        for (int y = 0; y < height; y += sampleStride) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x += sampleStride, sample++) {
+                int argb = row[x];
+                // Remove the alpha channel.
+                int rgb = argb | 0xFF000000;
+                Color.colorToHSV(rgb, hsv);
+                int hue = (int) hsv[0];
+                float score = hsv[1] * hsv[2];
+                sampleColors[sample] = rgb;
+                sampleHues[sample] = hue;
+                sampleScores[sample] = score;
+                sampleBuckets[sample] = (int) (hsv[1] * 100) + (int) (hsv[2] * 10000);
+
+                if ((argb >>> 24) < 0x80) {
+                    // Drop mostly-transparent pixels.
+                    continue;
+                }
+                // Bucket colors by the 360 integer hues.
+                if (hue < 0 || hue >= hueScoreHistogram.length) {
+                    // Defensively avoid array bounds violations.
+                    continue;
+                }
+                hueScoreHistogram[hue] += score;
+                if (hueScoreHistogram[hue] > highScore) {
+                    highScore = hueScoreHistogram[hue];
+                    bestHue = hue;
+                }
+            }
+        }
+
+        // The [s,v] buckets in the order they are first seen, and their scores
+        final int[] bucketKeys = new int[sampleCount];
+        final float[] bucketScores = new float[sampleCount];
+        int bucketCount = 0;
+        int bestColor = 0xff000000;
+        highScore = -1;
+        // Go back over the RGB colors that match the winning hue,
+        // creating a histogram of weighted s*v scores, for up to 100*100 [s,v] buckets.
+        // The highest-scoring RGB color wins.
+        for (int i = 0; i < sampleCount; i++) {
+            if (sampleHues[i] != bestHue) {
+                continue;
+            }
+            int bucket = 0;
+            while (bucket < bucketCount && bucketKeys[bucket] != sampleBuckets[i]) {
+                bucket++;
+            }
+            if (bucket == bucketCount) {
+                bucketKeys[bucketCount++] = sampleBuckets[i];
+            }
+            // Score by cumulative saturation * value.
+            bucketScores[bucket] += sampleScores[i];
+            if (bucketScores[bucket] > highScore) {
+                highScore = bucketScores[bucket];
+                // All the colors in the winning bucket are very similar. Last in wins.
+                bestColor = sampleColors[i];
+            }
+        }
+        return bestColor;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.AsyncTask;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Drag outlines of the workspace items, by item and size. The blur of an outline is started in
+ * the background as soon as a long press is pending on the item, so that it is usually ready when
+ * the drag begins. The outlines handed out are shared, and must not be modified.
+ *
+ * All the methods but the blur itself must be called on the main thread.
+ */
+class DragOutlineCache implements TrimmableCache {
+    private static final String TAG = "Launcher.DragOutlineCache";
+    private static final boolean DEBUG = false;
+
+    // Enough for a few widgets, and all the icons of a screen
+    private static final int MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Identifies the outline of an item at a size. The drawable of an icon is part of the key, so
+     * that its outline is rendered again when the icon changes. Widgets keep their shape as their
+     * content updates, and their outline is kept until they are resized or their layout is
+     * inflated again. Keys never hold on to views, which would leak them once they are detached.
+     */
+    static class Key {
+        private final long mItemId;
+        private final int mWidth;
+        private final int mHeight;
+        // The drawable of an icon, or the provider of a widget
+        private final Object mContent;
+        // The layout generation of a widget
+        private final int mGeneration;
+
+        private Key(long itemId, int width, int height, Object content, int generation) {
+            mItemId = itemId;
+            mWidth = width;
+            mHeight = height;
+            mContent = content;
+            mGeneration = generation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return mItemId == other.mItemId && mWidth == other.mWidth
+                    && mHeight == other.mHeight && mGeneration == other.mGeneration
+                    && (mContent == null ? other.mContent == null
+                            : mContent.equals(other.mContent));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (mItemId ^ (mItemId >>> 32));
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + (mContent == null ? 0 : mContent.hashCode());
+            return 31 * result + mGeneration;
+        }
+    }
+
+    private final HolographicOutlineHelper mOutlineHelper;
+    // Blurs the outlines rendered ahead, apart from the ones blurred on the UI thread
+    private final HolographicOutlineHelper mBackgroundOutlineHelper;
+    private final LruCache<Key, FutureTask<Bitmap>> mOutlines =
+            new LruCache<Key, FutureTask<Bitmap>>(MAX_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(Key key, FutureTask<Bitmap> outline) {
+                    return key.mWidth * key.mHeight * 4;
+                }
+            };
+
+    private int mRenderedAheadCount;
+    private int mRenderedOnDragCount;
+
+    DragOutlineCache(Context context, HolographicOutlineHelper outlineHelper) {
+        mOutlineHelper = outlineHelper;
+        mBackgroundOutlineHelper = new HolographicOutlineHelper(context);
+    }
+
+    /**
+     * Returns the key of the outline of the view, or null if the view isn't an item or hasn't
+     * been laid out.
+     */
+    static Key getKey(View v, int padding) {
+        if (!(v.getTag() instanceof ItemInfo) || v.getWidth() == 0 || v.getHeight() == 0) {
+            return null;
+        }
+        final ItemInfo info = (ItemInfo) v.getTag();
+        Object content = null;
+        int generation = 0;
+        if (v instanceof TextView) {
+            content = ((TextView) v).getCompoundDrawables()[1];
+        } else if (v instanceof LauncherAppWidgetHostView) {
+            if (info instanceof LauncherAppWidgetInfo) {
+                content = ((LauncherAppWidgetInfo) info).providerName;
+            }
+            generation = ((LauncherAppWidgetHostView) v).getLayoutGeneration();
+        }
+        return new Key(info.id, v.getWidth() + padding, v.getHeight() + padding, content,
+                generation);
+    }
+
+    boolean contains(Key key) {
+        return mOutlines.get(key) != null;
+    }
+
+    /**
+     * Turns the view drawn in the bitmap into its outline, and keeps it.
+     *
+     * @param async whether to blur the outline in the background, or right away
+     */
+    void render(Key key, final Bitmap drawn, final int color, final int outlineColor,
+            boolean async) {
+        final HolographicOutlineHelper outlineHelper =
+                async ? mBackgroundOutlineHelper : mOutlineHelper;
+        FutureTask<Bitmap> outline = new FutureTask<Bitmap>(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                outlineHelper.applyExpensiveOutlineWithBlur(drawn, new Canvas(), color,
+                        outlineColor);
+                return drawn;
+            }
+        });
+        mOutlines.put(key, outline);
+        if (async) {
+            mRenderedAheadCount++;
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(outline);
+        } else {
+            mRenderedOnDragCount++;
+            outline.run();
+        }
+    }
+
+    /**
+     * Returns the outline, waiting for its blur to complete if needed, or null if there is none.
+     */
+    Bitmap get(Key key) {
+        FutureTask<Bitmap> outline = mOutlines.get(key);
+        if (outline == null) {
+            return null;
+        }
+        if (DEBUG && !outline.isDone()) {
+            Log.d(TAG, "Waiting for the outline of item " + key.mItemId);
+        }
+        try {
+            return outline.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Failed to render the outline of item " + key.mItemId, e);
+        }
+        mOutlines.remove(key);
+        return null;
+    }
+
+    @Override
+    public String getCacheName() {
+        return "dragOutlines";
+    }
+
+    @Override
+    public long getCacheSizeBytes() {
+        return mOutlines.size() + mOutlineHelper.getScratchBufferBytes()
+                + mBackgroundOutlineHelper.getScratchBufferBytes();
+    }
+
+    @Override
+    public void trimCache(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mOutlines.evictAll();
+            mOutlineHelper.releaseScratchBuffers();
+            mBackgroundOutlineHelper.releaseScratchBuffers();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mOutlines.trimToSize(mOutlines.maxSize() / 2);
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Trimmed drag outlines for level " + level + ": " + mRenderedAheadCount
+                    + " rendered ahead, " + mRenderedOnDragCount + " rendered on drag");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import java.util.Arrays;
+
+/**
+ * Occupancy of the cells of a {@link CellLayout}, packed as one bit per cell in a long per row, so
+ * that a whole row of a region can be tested or marked at once.
+ */
+class GridOccupancy {
+    final int countX;
+    final int countY;
+    // Bit x of mRows[y] is set if the cell (x, y) is occupied
+    private final long[] mRows;
+
+    GridOccupancy(int countX, int countY) {
+        if (countX > Long.SIZE) {
+            throw new IllegalArgumentException("Too many columns: " + countX);
+        }
+        this.countX = countX;
+        this.countY = countY;
+        mRows = new long[countY];
+    }
+
+    /**
+     * Returns the mask of the columns x to x + spanX - 1.
+     */
+    private static long columnMask(int x, int spanX) {
+        if (spanX <= 0) {
+            return 0;
+        }
+        return (spanX >= Long.SIZE ? -1L : (1L << spanX) - 1) << x;
+    }
+
+    boolean isOccupied(int x, int y) {
+        return (mRows[y] & (1L << x)) != 0;
+    }
+
+    /**
+     * Marks the cells of the region, clipped to the grid, as occupied or vacant.
+     */
+    void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
+        if (cellX < 0 || cellY < 0) return;
+        final long mask = columnMask(cellX, Math.min(spanX, countX - cellX));
+        final int endY = Math.min(cellY + spanY, countY);
+        for (int y = cellY; y < endY; y++) {
+            if (value) {
+                mRows[y] |= mask;
+            } else {
+                mRows[y] &= ~mask;
+            }
+        }
+    }
+
+    /**
+     * Returns whether all the cells of the region, which must be inside the grid, are vacant.
+     */
+    boolean isRegionVacant(int cellX, int cellY, int spanX, int spanY) {
+        final long mask = columnMask(cellX, spanX);
+        for (int y = cellY; y < cellY + spanY; y++) {
+            if ((mRows[y] & mask) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a block of cells can be placed at the region, which must be inside the grid.
+     *
+     * @param block the cells of the block, relative to the top left of the region, which must not
+     *        overlap occupied cells
+     */
+    boolean isRegionVacant(int cellX, int cellY, int spanX, int spanY, GridOccupancy block) {
+        final long mask = columnMask(0, spanX);
+        for (int j = 0; j < spanY; j++) {
+            if (((mRows[cellY + j] >>> cellX) & block.mRows[j] & mask) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the last occupied column of the region, which must be inside the grid, or -1 if the
+     * region is vacant. No region starting between cellX and that column can be vacant.
+     */
+    int lastOccupiedColumn(int cellX, int cellY, int spanX, int spanY) {
+        final long mask = columnMask(cellX, spanX);
+        long occupied = 0;
+        for (int y = cellY; y < cellY + spanY; y++) {
+            occupied |= mRows[y] & mask;
+        }
+        return occupied == 0 ? -1 : Long.SIZE - 1 - Long.numberOfLeadingZeros(occupied);
+    }
+
+    /**
+     * Finds the first vacant region of the given span, scanning rows from the top.
+     *
+     * @return true if a vacant region was found, in which case its top left cell is set in vacant
+     */
+    boolean findVacantCell(int[] vacant, int spanX, int spanY) {
+        for (int y = 0; y + spanY <= countY; y++) {
+            for (int x = 0; x + spanX <= countX; x++) {
+                int lastOccupied = lastOccupiedColumn(x, y, spanX, spanY);
+                if (lastOccupied < 0) {
+                    vacant[0] = x;
+                    vacant[1] = y;
+                    return true;
+                }
+                x = lastOccupied;
+            }
+        }
+        return false;
+    }
+
+    void copyTo(GridOccupancy dest) {
+        System.arraycopy(mRows, 0, dest.mRows, 0, countY);
+    }
+
+    void clear() {
+        Arrays.fill(mRows, 0);
+    }
+}
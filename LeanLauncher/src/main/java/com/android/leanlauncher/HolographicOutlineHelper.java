@@ -31,7 +31,11 @@ public class HolographicOutlineHelper {
 
     private static final Rect sTempRect = new Rect();
 
+    // Only used by createMediumDropShadow(), on the UI thread
     private final Canvas mCanvas = new Canvas();
+    private final Paint mShadowDrawPaint = new Paint();
+    private final Paint mShadowBlurPaint = new Paint();
+
     private final Paint mDrawPaint = new Paint();
     private final Paint mBlurPaint = new Paint();
     private final Paint mErasePaint = new Paint();
@@ -43,6 +47,13 @@ public class HolographicOutlineHelper {
     private final BlurMaskFilter mShaowBlurMaskFilter;
     private final int mShadowOffset;
 
+    // Scratch buffers of the outline, reused from one item to the next and guarded by this
+    private int[] mPixelBuffer;
+    private Bitmap mGlowShape;
+    private final int[] mOuterBlurOffset = new int[2];
+    private final int[] mBrightOutlineOffset = new int[2];
+    private final int[] mThickInnerBlurOffset = new int[2];
+
     /**
      * Padding used when creating shadow bitmap;
      */
@@ -50,7 +61,11 @@ public class HolographicOutlineHelper {
 
     static HolographicOutlineHelper INSTANCE;
 
-    private HolographicOutlineHelper(Context context) {
+    /**
+     * Outlines are blurred under the lock of the helper. Blurs made in the background should use
+     * a helper of their own, so that they don't hold up the ones made on the UI thread.
+     */
+    HolographicOutlineHelper(Context context) {
         final float scale = LauncherAppState.getInstance().getScreenDensity();
 
         mMediumOuterBlurMaskFilter = new BlurMaskFilter(scale * 2.0f, BlurMaskFilter.Blur.OUTER);
@@ -61,6 +76,11 @@ public class HolographicOutlineHelper {
         mShadowOffset = (int) (scale * 2.0f);
         shadowBitmapPadding = (int) (scale * 4.0f);
 
+        mShadowDrawPaint.setFilterBitmap(true);
+        mShadowDrawPaint.setAntiAlias(true);
+        mShadowBlurPaint.setFilterBitmap(true);
+        mShadowBlurPaint.setAntiAlias(true);
+        mShadowBlurPaint.setMaskFilter(mShaowBlurMaskFilter);
         mDrawPaint.setFilterBitmap(true);
         mDrawPaint.setAntiAlias(true);
         mBlurPaint.setFilterBitmap(true);
@@ -85,40 +105,58 @@ public class HolographicOutlineHelper {
             int outlineColor) {
         applyExpensiveOutlineWithBlur(srcDst, srcDstCanvas, color, outlineColor, true);
     }
-    void applyExpensiveOutlineWithBlur(Bitmap srcDst, Canvas srcDstCanvas, int color,
+    /**
+     * Applies the outline to the bitmap. Can be called from any thread, as long as the canvas
+     * isn't shared with another one.
+     */
+    synchronized void applyExpensiveOutlineWithBlur(Bitmap srcDst, Canvas srcDstCanvas, int color,
             int outlineColor, boolean clipAlpha) {
+        final int width = srcDst.getWidth();
+        final int height = srcDst.getHeight();
 
         // We start by removing most of the alpha channel so as to ignore shadows, and
         // other types of partial transparency when defining the shape of the object
         if (clipAlpha) {
-            int[] srcBuffer = new int[srcDst.getWidth() * srcDst.getHeight()];
-            srcDst.getPixels(srcBuffer,
-                    0, srcDst.getWidth(), 0, 0, srcDst.getWidth(), srcDst.getHeight());
-            for (int i = 0; i < srcBuffer.length; i++) {
+            final int pixelCount = width * height;
+            if (mPixelBuffer == null || mPixelBuffer.length < pixelCount) {
+                mPixelBuffer = new int[pixelCount];
+            }
+            final int[] srcBuffer = mPixelBuffer;
+            srcDst.getPixels(srcBuffer, 0, width, 0, 0, width, height);
+            for (int i = 0; i < pixelCount; i++) {
                 final int alpha = srcBuffer[i] >>> 24;
                 if (alpha < 188) {
                     srcBuffer[i] = 0;
                 }
             }
-            srcDst.setPixels(srcBuffer,
-                    0, srcDst.getWidth(), 0, 0, srcDst.getWidth(), srcDst.getHeight());
+            srcDst.setPixels(srcBuffer, 0, width, 0, 0, width, height);
+        }
+
+        // The blurs are sized after the shape, so it is only reused for bitmaps of the same size,
+        // which is the case of all the icons
+        if (mGlowShape == null || mGlowShape.getWidth() != width
+                || mGlowShape.getHeight() != height) {
+            mGlowShape = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        } else {
+            mGlowShape.eraseColor(Color.TRANSPARENT);
         }
-        Bitmap glowShape = srcDst.extractAlpha();
+        final Bitmap glowShape = mGlowShape;
+        srcDstCanvas.setBitmap(glowShape);
+        srcDstCanvas.drawBitmap(srcDst, 0, 0, null);
 
         // calculate the outer blur first
         mBlurPaint.setMaskFilter(mMediumOuterBlurMaskFilter);
-        int[] outerBlurOffset = new int[2];
+        int[] outerBlurOffset = mOuterBlurOffset;
         Bitmap thickOuterBlur = glowShape.extractAlpha(mBlurPaint, outerBlurOffset);
 
         mBlurPaint.setMaskFilter(mThinOuterBlurMaskFilter);
-        int[] brightOutlineOffset = new int[2];
+        int[] brightOutlineOffset = mBrightOutlineOffset;
         Bitmap brightOutline = glowShape.extractAlpha(mBlurPaint, brightOutlineOffset);
 
         // calculate the inner blur
-        srcDstCanvas.setBitmap(glowShape);
         srcDstCanvas.drawColor(0xFF000000, PorterDuff.Mode.SRC_OUT);
         mBlurPaint.setMaskFilter(mMediumInnerBlurMaskFilter);
-        int[] thickInnerBlurOffset = new int[2];
+        int[] thickInnerBlurOffset = mThickInnerBlurOffset;
         Bitmap thickInnerBlur = glowShape.extractAlpha(mBlurPaint, thickInnerBlurOffset);
 
         // mask out the inner blur
@@ -149,9 +187,31 @@ public class HolographicOutlineHelper {
         brightOutline.recycle();
         thickOuterBlur.recycle();
         thickInnerBlur.recycle();
-        glowShape.recycle();
     }
 
+    /**
+     * Drops the scratch buffers, which are allocated again by the next outline.
+     */
+    synchronized void releaseScratchBuffers() {
+        mPixelBuffer = null;
+        mGlowShape = null;
+    }
+
+    /**
+     * Returns roughly how many bytes the scratch buffers hold.
+     */
+    synchronized long getScratchBufferBytes() {
+        long size = mPixelBuffer != null ? mPixelBuffer.length * 4L : 0;
+        if (mGlowShape != null) {
+            size += mGlowShape.getByteCount();
+        }
+        return size;
+    }
+
+    /**
+     * Draws the shadow of the pressed icon. Should be called on the UI thread, it doesn't wait
+     * for the outlines being blurred.
+     */
     Bitmap createMediumDropShadow(BubbleTextView view) {
         final Bitmap result = Bitmap.createBitmap(
                 view.getWidth() + shadowBitmapPadding + shadowBitmapPadding,
@@ -180,19 +240,18 @@ public class HolographicOutlineHelper {
         mCanvas.restore();
 
         int[] blurOffst = new int[2];
-        mBlurPaint.setMaskFilter(mShaowBlurMaskFilter);
-        Bitmap blurBitmap = result.extractAlpha(mBlurPaint, blurOffst);
+        Bitmap blurBitmap = result.extractAlpha(mShadowBlurPaint, blurOffst);
 
         mCanvas.save();
         mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
         mCanvas.translate(blurOffst[0], blurOffst[1]);
 
-        mDrawPaint.setColor(Color.BLACK);
-        mDrawPaint.setAlpha(30);
-        mCanvas.drawBitmap(blurBitmap, 0, 0, mDrawPaint);
+        mShadowDrawPaint.setColor(Color.BLACK);
+        mShadowDrawPaint.setAlpha(30);
+        mCanvas.drawBitmap(blurBitmap, 0, 0, mShadowDrawPaint);
 
-        mDrawPaint.setAlpha(60);
-        mCanvas.drawBitmap(blurBitmap, 0, mShadowOffset, mDrawPaint);
+        mShadowDrawPaint.setAlpha(60);
+        mCanvas.drawBitmap(blurBitmap, 0, mShadowOffset, mShadowDrawPaint);
         mCanvas.restore();
 
         mCanvas.setBitmap(null);
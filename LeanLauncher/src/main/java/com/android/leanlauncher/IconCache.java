@@ -17,15 +17,24 @@
 package com.android.leanlauncher;
 
 import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
@@ -43,12 +52,24 @@ import com.android.leanlauncher.compat.LauncherAppsCompat;
 import com.android.leanlauncher.compat.UserHandleCompat;
 import com.android.leanlauncher.compat.UserManagerCompat;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -57,12 +78,17 @@ import java.io.InputStream;
 
 /**
  * Cache of application icons.  Icons can be made from any thread.
+ *
+ * Cache hits don't take any lock. Misses for different components are rendered in parallel by
+ * their calling threads, while concurrent misses for the same component wait for a single render.
  */
-public class IconCache {
+public class IconCache implements TrimmableCache {
 
     private static final String TAG = "Launcher.IconCache";
 
     private static final int INITIAL_ICON_CACHE_CAPACITY = 50;
+    // Pixels sampled to find the dominant color of an icon
+    private static final int DOMINANT_COLOR_SAMPLES = 20;
 
     // Empty class name is used for storing package default entry.
     private static final String EMPTY_CLASS_NAME = ".";
@@ -84,7 +110,95 @@ public class IconCache {
         public Bitmap icon;
         public CharSequence title;
         public CharSequence contentDescription;
-        public CharSequence drawableName;
+        // The icon theme which was current when the entry was rendered
+        public String iconTheme;
+        // Found once when the icon is rendered, and persisted with it
+        public int dominantColor;
+        // When the entry was last handed out, in the order of mUseCount
+        public volatile long lastUsed;
+    }
+
+    /**
+     * An icon and the dominant color which was found when it was rendered.
+     */
+    public static final class ColoredIcon {
+        public final Bitmap icon;
+        public final int dominantColor;
+
+        ColoredIcon(Bitmap icon, int dominantColor) {
+            this.icon = icon;
+            this.dominantColor = dominantColor;
+        }
+    }
+
+    /**
+     * Appfilter mappings and decoration images of an icon pack. It is not modified once it has
+     * been loaded, so icons can be rendered from any thread while another pack is loading.
+     */
+    private static final class IconPack {
+        final String packageName;
+        final long lastUpdateTime;
+        // Keys are lower case, as icon packs don't always match the case of the component names
+        final HashMap<String, String> componentDrawables = new HashMap<>();
+        // Drawable for components of a package that aren't mapped themselves
+        final HashMap<String, String> packageDrawables = new HashMap<>();
+        final ArrayList<String> backgroundNames = new ArrayList<>();
+        String maskName;
+        String frontName;
+
+        IconPack(String packageName, long lastUpdateTime) {
+            this.packageName = packageName;
+            this.lastUpdateTime = lastUpdateTime;
+        }
+
+        void addDrawable(ComponentName componentName, String drawableName) {
+            componentDrawables.put(
+                    componentName.flattenToString().toLowerCase(Locale.US), drawableName);
+            String packageKey = componentName.getPackageName().toLowerCase(Locale.US);
+            if (!packageDrawables.containsKey(packageKey)) {
+                packageDrawables.put(packageKey, drawableName);
+            }
+        }
+
+        /**
+         * Adds a persisted mapping, keyed by either a flattened component or a package name.
+         */
+        void putDrawable(String key, String drawableName) {
+            if (key.indexOf('/') >= 0) {
+                componentDrawables.put(key, drawableName);
+            } else {
+                packageDrawables.put(key, drawableName);
+            }
+        }
+
+        String findDrawable(String packageName, String className) {
+            String packageKey = packageName.toLowerCase(Locale.US);
+            if (className != null) {
+                String drawableName = componentDrawables.get(
+                        packageKey + "/" + className.toLowerCase(Locale.US));
+                if (drawableName != null) {
+                    return drawableName;
+                }
+            }
+            return packageDrawables.get(packageKey);
+        }
+    }
+
+    /**
+     * Outcome of loading the icon pack of an icon theme. The icon pack is null if there is no icon
+     * theme, or if its package is missing or can't be parsed, which is only tried again once the
+     * theme or the package changes.
+     */
+    private static final class LoadedIconPack {
+        final String iconTheme;
+        final long lastUpdateTime;
+        final IconPack iconPack;
+
+        LoadedIconPack(String iconTheme, long lastUpdateTime, IconPack iconPack) {
+            this.iconTheme = iconTheme;
+            this.lastUpdateTime = lastUpdateTime;
+            this.iconPack = iconPack;
+        }
     }
 
     private static class CacheKey {
@@ -114,14 +228,36 @@ public class IconCache {
     private final PackageManager mPackageManager;
     private final UserManagerCompat mUserManager;
     private final LauncherAppsCompat mLauncherApps;
-    private final ArrayMap<CacheKey, CacheEntry> mCache =
-            new ArrayMap<>(INITIAL_ICON_CACHE_CAPACITY);
+    private final ConcurrentHashMap<CacheKey, CacheEntry> mCache =
+            new ConcurrentHashMap<>(INITIAL_ICON_CACHE_CAPACITY);
+    // Renders in progress, so that concurrent misses for the same key share one render
+    private final ConcurrentHashMap<CacheKey, FutureTask<CacheEntry>> mPendingEntries =
+            new ConcurrentHashMap<>();
+    private final AtomicLong mUseCount = new AtomicLong();
+    // Entries dropped by trimCache(), which reloadTrimmedEntries() brings back
+    private final Set<CacheKey> mTrimmedKeys =
+            Collections.newSetFromMap(new ConcurrentHashMap<CacheKey, Boolean>());
+    private final IconDB mIconDb;
     private int mIconDpi;
-    private String mCurrentIconTheme = null;
-    private ArrayList<String> mIconBackgroundNames = new ArrayList<>();
-    private String mIconMaskName;
-    private String mIconFrontName;
-    private float mIconScaleFactor;
+    private volatile String mCurrentIconTheme = null;
+    private volatile LoadedIconPack mLoadedIconPack;
+    private final Object mIconPackLock = new Object();
+    private final boolean mCompactIconStorage;
+    private final int mDefaultIconColor;
+
+    // Canvases of the threads compositing icon pack icons
+    private static final ThreadLocal<Canvas> sCompositeCanvas = new ThreadLocal<Canvas>() {
+        @Override
+        protected Canvas initialValue() {
+            return new Canvas();
+        }
+    };
+    // Scratch bitmap the icon pack masks are drawn into, shared by the compositing threads, and
+    // released by trimCache()
+    private final Object mScratchMaskLock = new Object();
+    private final Canvas mScratchMaskCanvas = new Canvas();
+    private Bitmap mScratchMask;
+    private static final Paint sDitherPaint = new Paint(Paint.DITHER_FLAG);
 
     public IconCache(Context context) {
         ActivityManager activityManager =
@@ -132,10 +268,16 @@ public class IconCache {
         mUserManager = UserManagerCompat.getInstance(mContext);
         mLauncherApps = LauncherAppsCompat.getInstance(mContext);
         mIconDpi = activityManager.getLauncherLargeIconDensity();
+        mIconDb = new IconDB(context);
+        mCompactIconStorage = context.getResources().getBoolean(R.bool.config_compactIconStorage);
 
         // need to set mIconDpi before getting default icon
         UserHandleCompat myUser = UserHandleCompat.myUserHandle();
-        mDefaultIcons.put(myUser, makeDefaultIcon(myUser));
+        Bitmap defaultIcon = makeDefaultIcon(myUser);
+        mDefaultIcons.put(myUser, defaultIcon);
+        // The badges of the other users don't change the color much
+        mDefaultIconColor =
+                DominantColors.findDominantColorByHue(defaultIcon, DOMINANT_COLOR_SAMPLES);
         mCurrentIconTheme = PreferenceManager.getDefaultSharedPreferences(context).
                 getString(context.getString(R.string.pref_icon_theme_key), null);
     }
@@ -172,21 +314,66 @@ public class IconCache {
     }
 
 
-    // should be called in background, not thread-safe
-    // gracelessly stolen from http://stackoverflow.com/a/31512017
+    /**
+     * Makes sure the appfilter mappings of the current icon theme are loaded. The parsed index is
+     * persisted, so appfilter.xml is only parsed again when the icon pack itself is updated.
+     * Should be called in background.
+     */
     public void loadIconPackDrawables() {
-        final long t = SystemClock.uptimeMillis();
-        if (mCurrentIconTheme == null
-                || mContext.getResources().getString(R.string.pref_no_icon_theme).equals(mCurrentIconTheme)) {
-            return;
+        synchronized (mIconPackLock) {
+            final String iconTheme = mCurrentIconTheme;
+            if (iconTheme == null
+                    || mContext.getResources().getString(R.string.pref_no_icon_theme).equals(iconTheme)) {
+                mLoadedIconPack = new LoadedIconPack(iconTheme, 0, null);
+                return;
+            }
+
+            long lastUpdateTime = getPackageLastUpdateTime(iconTheme);
+            LoadedIconPack loaded = mLoadedIconPack;
+            if (loaded != null && iconTheme.equals(loaded.iconTheme)
+                    && loaded.lastUpdateTime == lastUpdateTime) {
+                // already loaded, or already failed to
+                return;
+            }
+
+            final long t = SystemClock.uptimeMillis();
+            IconPack iconPack = getIconPackFromDb(iconTheme, lastUpdateTime);
+            if (iconPack != null) {
+                Log.d(TAG, "Loaded icon pack index from db: " + (SystemClock.uptimeMillis()-t) + "ms");
+            } else {
+                iconPack = parseIconPack(iconTheme, lastUpdateTime);
+                if (iconPack != null) {
+                    Log.d(TAG, "Finished parsing icon pack: " + (SystemClock.uptimeMillis()-t) + "ms");
+                    addIconPackToDb(iconPack);
+                }
+            }
+            mLoadedIconPack = new LoadedIconPack(iconTheme, lastUpdateTime, iconPack);
         }
+    }
+
+    /**
+     * Returns the loaded icon pack for the current icon theme, loading it first if the theme
+     * changed, or null if the theme has no usable icon pack.
+     */
+    private IconPack getIconPack() {
+        LoadedIconPack loaded = mLoadedIconPack;
+        if (loaded == null || !TextUtils.equals(loaded.iconTheme, mCurrentIconTheme)) {
+            loadIconPackDrawables();
+            loaded = mLoadedIconPack;
+        }
+        return loaded.iconPack;
+    }
+
+    // gracelessly stolen from http://stackoverflow.com/a/31512017
+    private IconPack parseIconPack(String iconTheme, long lastUpdateTime) {
+        IconPack iconPack = new IconPack(iconTheme, lastUpdateTime);
 
         // load appfilter.xml from the icon pack package
         try {
             XmlPullParser xpp = null;
 
-            Resources iconPackres = mPackageManager.getResourcesForApplication(mCurrentIconTheme);
-            int appfilterid = iconPackres.getIdentifier("appfilter", "xml", mCurrentIconTheme);
+            Resources iconPackres = mPackageManager.getResourcesForApplication(iconTheme);
+            int appfilterid = iconPackres.getIdentifier("appfilter", "xml", iconTheme);
             if (appfilterid > 0) {
                 xpp = iconPackres.getXml(appfilterid);
             } else {
@@ -224,9 +411,6 @@ public class IconCache {
                                 continue;
                             }
 
-                            CacheEntry entry = new CacheEntry();
-                            entry.drawableName = drawableName;
-
                             try {
                                 componentName = componentName.substring(componentName.indexOf('{') + 1, componentName.indexOf('}'));
                             } catch (StringIndexOutOfBoundsException e) {
@@ -237,42 +421,137 @@ public class IconCache {
 
                             ComponentName componentNameKey = ComponentName.unflattenFromString(componentName);
                             if (componentNameKey != null) {
-                                CacheKey key = new CacheKey(componentNameKey, UserHandleCompat.myUserHandle());
-                                mCache.put(key, entry);
+                                iconPack.addDrawable(componentNameKey, drawableName);
                             } else {
                                 Log.d(TAG, "ComponentName can't be obtained from: " + componentName);
                             }
                         } else if ("iconback".equals(xpp.getName())) {
                             for (int i = 0; i < xpp.getAttributeCount(); i++) {
                                 if (xpp.getAttributeName(i).startsWith("img")) {
-                                    mIconBackgroundNames.add(xpp.getAttributeValue(i));
+                                    iconPack.backgroundNames.add(xpp.getAttributeValue(i));
                                 }
                             }
                         } else if ("iconmask".equals(xpp.getName())) {
                             if (xpp.getAttributeCount() > 0 && "img1".equals(xpp.getAttributeName(0))) {
-                                mIconMaskName = xpp.getAttributeValue(0);
+                                iconPack.maskName = xpp.getAttributeValue(0);
                             }
                         } else if ("iconupon".equals(xpp.getName())) {
                             if (xpp.getAttributeCount() > 0 && "img1".equals(xpp.getAttributeName(0))) {
-                                mIconFrontName = xpp.getAttributeValue(0);
-                            }
-                        } else if ("scale".equals(xpp.getName())) {
-                            if (xpp.getAttributeCount() > 0 && "factor".equals(xpp.getAttributeName(0))) {
-                                mIconScaleFactor = Float.valueOf(xpp.getAttributeValue(0));
+                                iconPack.frontName = xpp.getAttributeValue(0);
                             }
                         }
                     }
                     eventType = xpp.next();
                 }
             }
-            Log.d(TAG, "Finished parsing icon pack: " + (SystemClock.uptimeMillis()-t) + "ms");
         } catch (PackageManager.NameNotFoundException e) {
             Log.d(TAG, "Cannot load icon pack" + e);
+            return null;
         } catch (XmlPullParserException e) {
             Log.d(TAG, "Cannot parse icon pack appfilter.xml" + e);
         } catch (IOException e) {
             Log.d(TAG, "Exception loading icon pack " + e);
         }
+        return iconPack;
+    }
+
+    /**
+     * Reads the persisted index of the icon pack.
+     * @return null if the icon pack has not been indexed for this version of the package
+     */
+    private IconPack getIconPackFromDb(String iconTheme, long lastUpdateTime) {
+        if (lastUpdateTime == 0) {
+            return null;
+        }
+
+        IconPack iconPack = new IconPack(iconTheme, lastUpdateTime);
+        try {
+            SQLiteDatabase db = mIconDb.getReadableDatabase();
+            Cursor c = db.query(IconDB.TABLE_ICON_PACKS,
+                    new String[] { IconDB.COLUMN_BACKGROUNDS, IconDB.COLUMN_MASK,
+                            IconDB.COLUMN_FRONT },
+                    IconDB.COLUMN_ICON_THEME + " = ? AND " + IconDB.COLUMN_LAST_UPDATED + " = ?",
+                    new String[] { iconTheme, Long.toString(lastUpdateTime) },
+                    null, null, null);
+            try {
+                if (!c.moveToNext()) {
+                    return null;
+                }
+                String backgrounds = c.getString(0);
+                if (!TextUtils.isEmpty(backgrounds)) {
+                    Collections.addAll(iconPack.backgroundNames,
+                            backgrounds.split(IconDB.BACKGROUNDS_SEPARATOR));
+                }
+                iconPack.maskName = c.getString(1);
+                iconPack.frontName = c.getString(2);
+            } finally {
+                c.close();
+            }
+
+            c = db.query(IconDB.TABLE_ICON_PACK_DRAWABLES,
+                    new String[] { IconDB.COLUMN_COMPONENT, IconDB.COLUMN_DRAWABLE },
+                    IconDB.COLUMN_ICON_THEME + " = ?", new String[] { iconTheme },
+                    null, null, null);
+            try {
+                while (c.moveToNext()) {
+                    iconPack.putDrawable(c.getString(0), c.getString(1));
+                }
+            } finally {
+                c.close();
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading icon pack from db: " + e);
+            return null;
+        }
+        return iconPack;
+    }
+
+    private void addIconPackToDb(IconPack iconPack) {
+        if (iconPack.lastUpdateTime == 0) {
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = mIconDb.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                String[] themeArgs = new String[] { iconPack.packageName };
+                db.delete(IconDB.TABLE_ICON_PACKS, IconDB.COLUMN_ICON_THEME + " = ?", themeArgs);
+                db.delete(IconDB.TABLE_ICON_PACK_DRAWABLES, IconDB.COLUMN_ICON_THEME + " = ?",
+                        themeArgs);
+
+                ContentValues values = new ContentValues();
+                values.put(IconDB.COLUMN_ICON_THEME, iconPack.packageName);
+                values.put(IconDB.COLUMN_LAST_UPDATED, iconPack.lastUpdateTime);
+                values.put(IconDB.COLUMN_BACKGROUNDS,
+                        TextUtils.join(IconDB.BACKGROUNDS_SEPARATOR, iconPack.backgroundNames));
+                values.put(IconDB.COLUMN_MASK, iconPack.maskName);
+                values.put(IconDB.COLUMN_FRONT, iconPack.frontName);
+                db.insert(IconDB.TABLE_ICON_PACKS, null, values);
+
+                SQLiteStatement insert = db.compileStatement("INSERT INTO "
+                        + IconDB.TABLE_ICON_PACK_DRAWABLES + " (" + IconDB.COLUMN_ICON_THEME + ", "
+                        + IconDB.COLUMN_COMPONENT + ", " + IconDB.COLUMN_DRAWABLE
+                        + ") VALUES (?, ?, ?)");
+                insert.bindString(1, iconPack.packageName);
+                for (Entry<String, String> e : iconPack.componentDrawables.entrySet()) {
+                    insert.bindString(2, e.getKey());
+                    insert.bindString(3, e.getValue());
+                    insert.executeInsert();
+                }
+                for (Entry<String, String> e : iconPack.packageDrawables.entrySet()) {
+                    insert.bindString(2, e.getKey());
+                    insert.bindString(3, e.getValue());
+                    insert.executeInsert();
+                }
+                insert.close();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error writing icon pack to db: " + e);
+        }
     }
 
     private Drawable getFullResDefaultActivityIcon() {
@@ -306,15 +585,24 @@ public class IconCache {
     /**
      * Remove any records for the supplied ComponentName.
      */
-    public synchronized void remove(ComponentName componentName, UserHandleCompat user) {
-        mCache.remove(new CacheKey(componentName, user));
+    public void remove(ComponentName componentName, UserHandleCompat user) {
+        CacheKey key = new CacheKey(componentName, user);
+        // Drop any render in progress as well, so that it doesn't publish a stale entry
+        mPendingEntries.remove(key);
+        mCache.remove(key);
     }
 
     /**
      * Remove any records for the supplied package name.
      */
-    public synchronized void remove(String packageName, UserHandleCompat user) {
+    public void remove(String packageName, UserHandleCompat user) {
         HashSet<CacheKey> forDeletion = new HashSet<CacheKey>();
+        for (CacheKey key: mPendingEntries.keySet()) {
+            if (key.componentName.getPackageName().equals(packageName)
+                    && key.user.equals(user)) {
+                forDeletion.add(key);
+            }
+        }
         for (CacheKey key: mCache.keySet()) {
             if (key.componentName.getPackageName().equals(packageName)
                     && key.user.equals(user)) {
@@ -322,21 +610,187 @@ public class IconCache {
             }
         }
         for (CacheKey condemned: forDeletion) {
+            mPendingEntries.remove(condemned);
             mCache.remove(condemned);
         }
     }
 
+    /**
+     * Remove the persisted icons for the supplied package name, so that they are re-rendered the
+     * next time they are requested.
+     */
+    public void removeIconsFromDb(String packageName, UserHandleCompat user) {
+        // Not LIKE, which is case insensitive and takes the _ of package names as a wildcard
+        final String prefix = packageName + "/";
+        try {
+            mIconDb.getWritableDatabase().delete(IconDB.TABLE_NAME,
+                    "substr(" + IconDB.COLUMN_COMPONENT + ", 1, length(?)) = ? AND "
+                            + IconDB.COLUMN_USER + " = ?",
+                    new String[] {
+                            prefix, prefix,
+                            Long.toString(mUserManager.getSerialNumberForUser(user))
+                    });
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error removing icons for " + packageName + " from db: " + e);
+        }
+    }
+
+    /**
+     * Renders the icon of the activity again for the current icon theme, and only then replaces
+     * the cached one, so that the previous icon can still be used until its replacement is ready.
+     * Should be called in background.
+     */
+    public void refreshIcon(Intent intent, UserHandleCompat user) {
+        final ComponentName component = intent.getComponent();
+        if (component == null) {
+            return;
+        }
+        final CacheKey cacheKey = new CacheKey(component, user);
+        CacheEntry entry = mCache.get(cacheKey);
+        if (entry != null && TextUtils.equals(entry.iconTheme, mCurrentIconTheme)) {
+            return;
+        }
+        final LauncherActivityInfoCompat info = mLauncherApps.resolveActivity(intent, user);
+        if (info == null) {
+            // Not installed, the fallback entry is dropped by removeStaleEntries()
+            return;
+        }
+        final String iconTheme = mCurrentIconTheme;
+        entry = createEntry(cacheKey, info, null);
+        entry.iconTheme = iconTheme;
+        if (entry.icon != null) {
+            mCache.put(cacheKey, entry);
+        }
+    }
+
+    /**
+     * Drops the entries which were rendered for another icon theme than the current one.
+     */
+    public void removeStaleEntries() {
+        final String iconTheme = mCurrentIconTheme;
+        Iterator<CacheEntry> it = mCache.values().iterator();
+        while (it.hasNext()) {
+            if (!TextUtils.equals(it.next().iconTheme, iconTheme)) {
+                it.remove();
+            }
+        }
+    }
+
     /**
      * Empty out the cache.
      */
-    public synchronized void flush() {
+    public void flush() {
+        mPendingEntries.clear();
         mCache.clear();
+        mTrimmedKeys.clear();
+    }
+
+    @Override
+    public String getCacheName() {
+        return "icons";
+    }
+
+    @Override
+    public long getCacheSizeBytes() {
+        long size = 0;
+        for (CacheEntry entry : mCache.values()) {
+            if (entry.icon != null) {
+                size += entry.icon.getByteCount();
+            }
+        }
+        synchronized (mDefaultIcons) {
+            for (int i = 0; i < mDefaultIcons.size(); i++) {
+                size += mDefaultIcons.valueAt(i).getByteCount();
+            }
+        }
+        synchronized (mScratchMaskLock) {
+            if (mScratchMask != null) {
+                size += mScratchMask.getByteCount();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The cache is only trimmed once the launcher is in the background, and then only of the
+     * least recently used entries, so that the icons of the workspace and of the last all apps
+     * page, which were handed out last, are kept. The trimmed entries are brought back by
+     * {@link #reloadTrimmedEntries()} rather than when they are next bound.
+     */
+    @Override
+    public void trimCache(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            synchronized (mScratchMaskLock) {
+                mScratchMask = null;
+            }
+            final long size = getCacheSizeBytes();
+            trimToSize(level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE ? size / 4 : size / 2);
+            // Other users get their default icon rendered again if needed
+            UserHandleCompat myUser = UserHandleCompat.myUserHandle();
+            synchronized (mDefaultIcons) {
+                Bitmap myDefaultIcon = mDefaultIcons.get(myUser);
+                mDefaultIcons.clear();
+                if (myDefaultIcon != null) {
+                    mDefaultIcons.put(myUser, myDefaultIcon);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the least recently used entries until the cached icons take at most maxBytes.
+     */
+    private void trimToSize(long maxBytes) {
+        ArrayList<Entry<CacheKey, CacheEntry>> entries =
+                new ArrayList<Entry<CacheKey, CacheEntry>>(mCache.entrySet());
+        Collections.sort(entries, new Comparator<Entry<CacheKey, CacheEntry>>() {
+            @Override
+            public int compare(Entry<CacheKey, CacheEntry> lhs, Entry<CacheKey, CacheEntry> rhs) {
+                long lhsUsed = lhs.getValue().lastUsed;
+                long rhsUsed = rhs.getValue().lastUsed;
+                return lhsUsed < rhsUsed ? -1 : (lhsUsed == rhsUsed ? 0 : 1);
+            }
+        });
+        long size = 0;
+        for (Entry<CacheKey, CacheEntry> e : entries) {
+            size += e.getValue().icon.getByteCount();
+        }
+        for (int i = 0; i < entries.size() && size > maxBytes; i++) {
+            Entry<CacheKey, CacheEntry> e = entries.get(i);
+            if (mCache.remove(e.getKey(), e.getValue())) {
+                mTrimmedKeys.add(e.getKey());
+            }
+            size -= e.getValue().icon.getByteCount();
+        }
+    }
+
+    /**
+     * Reads back or renders the entries dropped by {@link #trimCache(int)}, so that they aren't
+     * loaded on the UI thread when they are bound again. Should be called in background.
+     */
+    public void reloadTrimmedEntries() {
+        Iterator<CacheKey> it = mTrimmedKeys.iterator();
+        while (it.hasNext()) {
+            CacheKey key = it.next();
+            it.remove();
+            if (mCache.containsKey(key)) {
+                continue;
+            }
+            Intent intent = new Intent(Intent.ACTION_MAIN)
+                    .addCategory(Intent.CATEGORY_LAUNCHER)
+                    .setComponent(key.componentName);
+            LauncherActivityInfoCompat info = mLauncherApps.resolveActivity(intent, key.user);
+            if (info != null) {
+                getCacheEntry(key.componentName, info, null, key.user, false);
+            }
+        }
     }
 
     /**
      * Empty out the cache that aren't of the correct grid size
      */
-    public synchronized void flushInvalidIcons(DeviceProfile grid) {
+    public void flushInvalidIcons(DeviceProfile grid) {
         Iterator<Entry<CacheKey, CacheEntry>> it = mCache.entrySet().iterator();
         while (it.hasNext()) {
             final CacheEntry e = it.next().getValue();
@@ -350,9 +804,9 @@ public class IconCache {
     /**
      * Fill in "application" with the icon and label for "info."
      */
-    public synchronized void getTitleAndIcon(AppInfo application, LauncherActivityInfoCompat info,
+    public void getTitleAndIcon(AppInfo application, LauncherActivityInfoCompat info,
             ArrayMap<Object, CharSequence> labelCache) {
-        CacheEntry entry = cacheLocked(application.componentName, info, labelCache,
+        CacheEntry entry = getCacheEntry(application.componentName, info, labelCache,
                 info.getUser(), false);
 
         application.title = entry.title;
@@ -368,7 +822,7 @@ public class IconCache {
         return entry.icon;
     }
 
-    public synchronized Bitmap getIcon(Intent intent, UserHandleCompat user) {
+    public Bitmap getIcon(Intent intent, UserHandleCompat user) {
         ComponentName component = intent.getComponent();
         // null info means not installed, but if we have a component from the intent then
         // we should still look in the cache for restored app icons.
@@ -377,99 +831,275 @@ public class IconCache {
         }
 
         LauncherActivityInfoCompat launcherActInfo = mLauncherApps.resolveActivity(intent, user);
-        CacheEntry entry = cacheLocked(component, launcherActInfo, null, user, true);
+        CacheEntry entry = getCacheEntry(component, launcherActInfo, null, user, true);
         return entry.icon;
     }
 
-    private synchronized Bitmap getDefaultUserIcon(UserHandleCompat user) {
-        if (!mDefaultIcons.containsKey(user)) {
-            mDefaultIcons.put(user, makeDefaultIcon(user));
+    /**
+     * Returns the icon of {@link #getIcon(Intent, UserHandleCompat)} for the same arguments,
+     * together with its dominant color, both from the same cache entry.
+     */
+    public ColoredIcon getColoredIcon(Intent intent, UserHandleCompat user) {
+        ComponentName component = intent.getComponent();
+        if (component == null) {
+            return new ColoredIcon(getDefaultUserIcon(user), mDefaultIconColor);
+        }
+
+        LauncherActivityInfoCompat launcherActInfo = mLauncherApps.resolveActivity(intent, user);
+        CacheEntry entry = getCacheEntry(component, launcherActInfo, null, user, true);
+        return new ColoredIcon(entry.icon, entry.dominantColor);
+    }
+
+    private Bitmap getDefaultUserIcon(UserHandleCompat user) {
+        synchronized (mDefaultIcons) {
+            if (!mDefaultIcons.containsKey(user)) {
+                mDefaultIcons.put(user, makeDefaultIcon(user));
+            }
+            return mDefaultIcons.get(user);
         }
-        return mDefaultIcons.get(user);
     }
 
     /**
      * Retrieves the entry from the cache. If the entry is not present, it creates a new entry.
-     * This method is not thread safe, it must be called from a synchronized method.
      */
-    private CacheEntry cacheLocked(ComponentName componentName, LauncherActivityInfoCompat info,
-            ArrayMap<Object, CharSequence> labelCache, UserHandleCompat user, boolean usePackageIcon) {
-        CacheKey cacheKey = new CacheKey(componentName, user);
+    private CacheEntry getCacheEntry(final ComponentName componentName,
+            final LauncherActivityInfoCompat info, final ArrayMap<Object, CharSequence> labelCache,
+            final UserHandleCompat user, boolean usePackageIcon) {
+        final CacheKey cacheKey = new CacheKey(componentName, user);
         CacheEntry entry = mCache.get(cacheKey);
-        if (entry == null || entry.icon == null) {
-            entry = new CacheEntry();
+        // Entries of a previous icon theme are still handed out until refreshIcon() replaces
+        // them, so that binds don't render icons while the theme changes
+        if (entry != null && entry.icon != null) {
+            entry.lastUsed = mUseCount.incrementAndGet();
+            return entry;
+        }
+        LauncherTrace.incrementCounter(LauncherTrace.COUNTER_ICON_CACHE_MISSES);
 
-            if (info != null) {
-                ComponentName labelKey = info.getComponentName();
-                if (labelCache != null && labelCache.containsKey(labelKey)) {
-                    entry.title = labelCache.get(labelKey).toString();
-                } else {
-                    entry.title = info.getLabel().toString();
-                    if (labelCache != null) {
-                        labelCache.put(labelKey, entry.title);
-                    }
+        if (info != null) {
+            return loadEntry(cacheKey, new Callable<CacheEntry>() {
+                @Override
+                public CacheEntry call() {
+                    return createEntry(cacheKey, info, labelCache);
                 }
+            });
+        }
 
-                entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, user);
-                Drawable defaultDrawable = info.getBadgedIcon(mIconDpi);
-                if (mCurrentIconTheme != null) {
-                    entry.icon = createNewIconBitmap(componentName.getPackageName(), componentName.getClassName(),
-                            defaultDrawable);
-                }
+        entry = new CacheEntry();
+        entry.title = "";
+        if (usePackageIcon) {
+            CacheEntry packageEntry = getEntryForPackage(
+                    componentName.getPackageName(), user);
+            if (packageEntry != null) {
+                if (DEBUG) Log.d(TAG, "using package default icon for " +
+                        componentName.toShortString());
+                entry.icon = packageEntry.icon;
+                entry.title = packageEntry.title;
+                entry.dominantColor = packageEntry.dominantColor;
+            }
+        }
+        if (entry.icon == null) {
+            if (DEBUG) Log.d(TAG, "using default icon for " +
+                    componentName.toShortString());
+            entry.icon = getDefaultUserIcon(user);
+            entry.dominantColor = mDefaultIconColor;
+        }
+        return entry;
+    }
 
-                if (entry.icon == null) {
-                    // pick default icon
-                    entry.icon = Utilities.createIconBitmap(defaultDrawable, mContext);
+    /**
+     * Runs the loader for a missing entry, unless another thread is already creating the entry for
+     * the same key, in which case its result is used. Entries with an icon are added to the cache.
+     */
+    private CacheEntry loadEntry(CacheKey cacheKey, Callable<CacheEntry> loader) {
+        FutureTask<CacheEntry> task = new FutureTask<>(loader);
+        FutureTask<CacheEntry> running = mPendingEntries.putIfAbsent(cacheKey, task);
+        if (running == null) {
+            running = task;
+            final String iconTheme = mCurrentIconTheme;
+            task.run();
+            // The entry is only published if it wasn't removed while we were rendering it
+            if (mPendingEntries.remove(cacheKey, task)) {
+                CacheEntry entry = getEntryResult(task);
+                entry.iconTheme = iconTheme;
+                entry.lastUsed = mUseCount.incrementAndGet();
+                if (entry.icon != null) {
+                    mCache.put(cacheKey, entry);
                 }
+            }
+        }
+        return getEntryResult(running);
+    }
 
-                mCache.put(cacheKey, entry);
-            } else {
-                entry.title = "";
-                if (usePackageIcon) {
-                    CacheEntry packageEntry = getEntryForPackage(
-                            componentName.getPackageName(), user);
-                    if (packageEntry != null) {
-                        if (DEBUG) Log.d(TAG, "using package default icon for " +
-                                componentName.toShortString());
-                        entry.icon = packageEntry.icon;
-                        entry.title = packageEntry.title;
+    private static CacheEntry getEntryResult(FutureTask<CacheEntry> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private CacheEntry createEntry(CacheKey cacheKey, LauncherActivityInfoCompat info,
+            ArrayMap<Object, CharSequence> labelCache) {
+        final ComponentName componentName = cacheKey.componentName;
+        final ComponentName labelKey = info.getComponentName();
+        CacheEntry entry = new CacheEntry();
+        long lastUpdateTime = getPackageLastUpdateTime(componentName.getPackageName());
+        if (getEntryFromDb(cacheKey, entry, lastUpdateTime)) {
+            if (labelCache != null) {
+                synchronized (labelCache) {
+                    if (!labelCache.containsKey(labelKey)) {
+                        labelCache.put(labelKey, entry.title);
                     }
                 }
-                if (entry.icon == null) {
-                    if (DEBUG) Log.d(TAG, "using default icon for " +
-                            componentName.toShortString());
-                    entry.icon = getDefaultUserIcon(user);
+            }
+        } else {
+            CharSequence cachedLabel = null;
+            if (labelCache != null) {
+                synchronized (labelCache) {
+                    cachedLabel = labelCache.get(labelKey);
+                }
+            }
+            if (cachedLabel != null) {
+                entry.title = cachedLabel.toString();
+            } else {
+                entry.title = info.getLabel().toString();
+                if (labelCache != null) {
+                    synchronized (labelCache) {
+                        labelCache.put(labelKey, entry.title);
+                    }
                 }
             }
+
+            Drawable defaultDrawable = info.getBadgedIcon(mIconDpi);
+            if (mCurrentIconTheme != null) {
+                entry.icon = createNewIconBitmap(componentName.getPackageName(),
+                        componentName.getClassName(), defaultDrawable);
+            }
+
+            if (entry.icon == null) {
+                // pick default icon
+                entry.icon = Utilities.createIconBitmap(defaultDrawable, mContext);
+            }
+            entry.icon = compactRenderedIcon(entry.icon);
+            entry.dominantColor =
+                    DominantColors.findDominantColorByHue(entry.icon, DOMINANT_COLOR_SAMPLES);
+
+            addEntryToDb(cacheKey, entry, lastUpdateTime);
         }
+
+        entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, cacheKey.user);
         return entry;
     }
 
-    private Bitmap createNewIconBitmap(String packageName, String className, Drawable defaultDrawable) {
-        String drawableName = findDrawableFromIconPack(packageName, className);
+    /**
+     * Returns the last update time of the package, or 0 if it is not visible to the current user,
+     * in which case its icons are not persisted.
+     */
+    private long getPackageLastUpdateTime(String packageName) {
+        try {
+            PackageInfo info = mPackageManager.getPackageInfo(packageName, 0);
+            return info.lastUpdateTime;
+        } catch (NameNotFoundException e) {
+            return 0;
+        }
+    }
 
-        return createIconBitmapFromTheme(drawableName, defaultDrawable);
+    private String[] getDbKeyArgs(CacheKey cacheKey, long lastUpdateTime) {
+        return new String[] {
+                cacheKey.componentName.flattenToString(),
+                Long.toString(mUserManager.getSerialNumberForUser(cacheKey.user)),
+                Long.toString(lastUpdateTime),
+                Integer.toString(mIconDpi),
+                mCurrentIconTheme == null ? "" : mCurrentIconTheme,
+                Locale.getDefault().toString()
+        };
     }
 
-    private String findDrawableFromIconPack(String packageName, String className) {
-        String drawableName = null;
+    /**
+     * Fills the title and icon of the entry from the persisted icon store.
+     * @return true if a matching, up-to-date row was found
+     */
+    private boolean getEntryFromDb(CacheKey cacheKey, CacheEntry entry, long lastUpdateTime) {
+        if (lastUpdateTime == 0) {
+            return false;
+        }
 
-        for (CacheKey key : mCache.keySet()) {
-            if (key != null && key.componentName.getPackageName().equalsIgnoreCase(packageName)) {
-                CharSequence cacheDrawableName = mCache.get(key).drawableName;
-                if (cacheDrawableName != null) {
-                    drawableName = cacheDrawableName.toString();
-                    Log.d(TAG, drawableName + " -- found for -- " + packageName);
+        Cursor c;
+        try {
+            c = mIconDb.getReadableDatabase().query(IconDB.TABLE_NAME,
+                    new String[] { IconDB.COLUMN_LABEL, IconDB.COLUMN_ICON,
+                            IconDB.COLUMN_DOMINANT_COLOR, IconDB.COLUMN_OPAQUE },
+                    IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ? AND "
+                            + IconDB.COLUMN_LAST_UPDATED + " = ? AND "
+                            + IconDB.COLUMN_ICON_DPI + " = ? AND "
+                            + IconDB.COLUMN_ICON_THEME + " = ? AND "
+                            + IconDB.COLUMN_LOCALE + " = ?",
+                    getDbKeyArgs(cacheKey, lastUpdateTime),
+                    null, null, null);
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading icon db: " + e);
+            return false;
+        }
 
-                    if (className == null || className.equalsIgnoreCase(key.componentName.getClassName())) {
-                        // we've found it
-                        break;
-                    }
+        try {
+            if (c.moveToNext()) {
+                byte[] blob = c.getBlob(1);
+                Bitmap icon = BitmapFactory.decodeByteArray(blob, 0, blob.length);
+                if (icon != null) {
+                    entry.title = c.getString(0);
+                    entry.icon = compactIcon(icon, c.getInt(3) != 0);
+                    entry.dominantColor = c.getInt(2);
+                    return true;
                 }
             }
+        } finally {
+            c.close();
         }
+        return false;
+    }
 
-        return drawableName;
+    private void addEntryToDb(CacheKey cacheKey, CacheEntry entry, long lastUpdateTime) {
+        if (lastUpdateTime == 0) {
+            return;
+        }
+
+        String[] keyArgs = getDbKeyArgs(cacheKey, lastUpdateTime);
+        ContentValues values = new ContentValues();
+        values.put(IconDB.COLUMN_COMPONENT, keyArgs[0]);
+        values.put(IconDB.COLUMN_USER, keyArgs[1]);
+        values.put(IconDB.COLUMN_LAST_UPDATED, lastUpdateTime);
+        values.put(IconDB.COLUMN_ICON_DPI, mIconDpi);
+        values.put(IconDB.COLUMN_ICON_THEME, keyArgs[4]);
+        values.put(IconDB.COLUMN_LOCALE, keyArgs[5]);
+        values.put(IconDB.COLUMN_LABEL, entry.title.toString());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        entry.icon.compress(Bitmap.CompressFormat.PNG, 100, stream);
+        values.put(IconDB.COLUMN_ICON, stream.toByteArray());
+        values.put(IconDB.COLUMN_DOMINANT_COLOR, entry.dominantColor);
+        // Only icons found to be opaque are compacted, so that the icon isn't scanned on reads
+        values.put(IconDB.COLUMN_OPAQUE, entry.icon.getConfig() == Bitmap.Config.RGB_565 ? 1 : 0);
+        try {
+            mIconDb.getWritableDatabase().insertWithOnConflict(IconDB.TABLE_NAME, null, values,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error writing icon to db: " + e);
+        }
+    }
+
+    private Bitmap createNewIconBitmap(String packageName, String className, Drawable defaultDrawable) {
+        IconPack iconPack = getIconPack();
+        if (iconPack == null) {
+            return null;
+        }
+
+        String drawableName = iconPack.findDrawable(packageName, className);
+        if (DEBUG && drawableName != null) {
+            Log.d(TAG, drawableName + " -- found for -- " + packageName);
+        }
+        return createIconBitmapFromTheme(iconPack, drawableName, defaultDrawable);
     }
 
     private Drawable loadDrawableFromIconPack(Resources iconPackRes, String packageName, String drawableName) {
@@ -484,67 +1114,50 @@ public class IconCache {
         return null;
     }
 
-    private Bitmap loadBitmapFromIconPack(Resources iconPackRes, String packageName, String drawableName) {
-        Drawable drawable = loadDrawableFromIconPack(iconPackRes, packageName, drawableName);
-
-        if (drawable != null) {
-            return Utilities.createIconBitmap(drawable, mContext);
-        }
-        return null;
-    }
-
-    public Bitmap createIconBitmapFromTheme(String iconDrawableName, Drawable defaultDrawable) {
-        Bitmap icon; Resources iconPackRes;
+    private Bitmap createIconBitmapFromTheme(IconPack iconPack, String iconDrawableName,
+            Drawable defaultDrawable) {
+        final String iconTheme = iconPack.packageName;
+        Drawable icon; Resources iconPackRes;
         try {
-            iconPackRes = mContext.getPackageManager().getResourcesForApplication(mCurrentIconTheme);
-            icon = loadBitmapFromIconPack(iconPackRes, mCurrentIconTheme, iconDrawableName);
+            iconPackRes = mContext.getPackageManager().getResourcesForApplication(iconTheme);
+            icon = loadDrawableFromIconPack(iconPackRes, iconTheme, iconDrawableName);
         } catch (NameNotFoundException e) {
-            Log.d(TAG, "Can't find icon theme: " + mCurrentIconTheme + " for " + iconDrawableName);
+            Log.d(TAG, "Can't find icon theme: " + iconTheme + " for " + iconDrawableName);
             return null;
         }
 
         if (icon == null) {
-            Log.d(TAG, "Using default icon, can't find icon drawable: " + iconDrawableName + " in " + mCurrentIconTheme);
-            icon = Utilities.createIconBitmap(defaultDrawable, mContext);
+            Log.d(TAG, "Using default icon, can't find icon drawable: " + iconDrawableName + " in " + iconTheme);
+            icon = defaultDrawable;
         }
 
 
-        if (mIconBackgroundNames.size() < 1) {
+        if (iconPack.backgroundNames.size() < 1) {
             // we are done
-            return icon;
+            return Utilities.createIconBitmap(icon, mContext);
         } else {
             // maybe find bg by icon hue? don't like random bg
-            int backImageInd = Math.round(mIconBackgroundNames.size() / 2);
-            Bitmap background = loadBitmapFromIconPack(iconPackRes, mCurrentIconTheme, mIconBackgroundNames.get(backImageInd));
+            int backImageInd = Math.round(iconPack.backgroundNames.size() / 2);
+            Drawable background = loadDrawableFromIconPack(iconPackRes, iconTheme, iconPack.backgroundNames.get(backImageInd));
             if (background == null) {
-                Log.d(TAG, "Can't load background image: " + mIconBackgroundNames.get(backImageInd));
-                return icon;
+                Log.d(TAG, "Can't load background image: " + iconPack.backgroundNames.get(backImageInd));
+                return Utilities.createIconBitmap(icon, mContext);
             }
 
-            int w = background.getWidth(), h = background.getHeight();
-            Bitmap result = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-            final Canvas tempCanvas = new Canvas(result);
-
-            // draw the background first
-            tempCanvas.drawBitmap(background, 0, 0, null);
+            // The layers are drawn straight into the result, which starts as the background,
+            // instead of being rendered to bitmaps of their own first
+            Bitmap result = Utilities.createIconBitmap(background, mContext);
+            final Canvas tempCanvas = sCompositeCanvas.get();
+            tempCanvas.setBitmap(result);
 
-            // create a mutable mask bitmap with the same mask
-            if (icon.getWidth() > w || icon.getHeight() > h) {
-                mIconScaleFactor = (mIconScaleFactor == 0) ? 1 : mIconScaleFactor;
-                icon = Bitmap.createScaledBitmap(icon, (int) (w * mIconScaleFactor), (int) (h * mIconScaleFactor), false);
-            }
-
-            Bitmap maskImage = loadBitmapFromIconPack(iconPackRes, mCurrentIconTheme, mIconMaskName);
-            if (maskImage != null) {
-                renderIconBackground(icon, maskImage, tempCanvas, w, h);
-            } else {
-                renderIconBackground(icon, background, tempCanvas, w, h);
-            }
+            Drawable maskImage = loadDrawableFromIconPack(iconPackRes, iconTheme, iconPack.maskName);
+            renderIconBackground(icon, maskImage != null ? maskImage : background, tempCanvas,
+                    result.getWidth(), result.getHeight());
 
             // paint the front
-            Bitmap frontImage = loadBitmapFromIconPack(iconPackRes, mCurrentIconTheme, mIconFrontName);
+            Drawable frontImage = loadDrawableFromIconPack(iconPackRes, iconTheme, iconPack.frontName);
             if (frontImage != null) {
-                tempCanvas.drawBitmap(frontImage, 0, 0, null);
+                Utilities.drawIcon(frontImage, tempCanvas, mContext);
             }
 
             // clean up canvas
@@ -554,50 +1167,199 @@ public class IconCache {
         }
     }
 
-    private void renderIconBackground(Bitmap icon, Bitmap maskImage, Canvas tempCanvas, int w, int h) {
-        // draw the scaled bitmap with mask
-        Bitmap mutableMask = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+    private void renderIconBackground(Drawable icon, Drawable maskImage, Canvas tempCanvas,
+            int w, int h) {
+        // paint the icon
+        Utilities.drawIcon(icon, tempCanvas, mContext);
 
-        Canvas maskCanvas = new Canvas(mutableMask);
-        maskCanvas.drawBitmap(maskImage, 0, 0, new Paint());
-
-        // paint the bitmap with mask into the result
         Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
-        tempCanvas.drawBitmap(icon, (w - icon.getWidth()) / 2, (h - icon.getHeight()) / 2, null);
-        tempCanvas.drawBitmap(mutableMask, 0, 0, paint);
+        synchronized (mScratchMaskLock) {
+            // draw the mask into the scratch bitmap, and cut the icon out with it
+            Bitmap mask = mScratchMask;
+            if (mask == null || mask.getWidth() != w || mask.getHeight() != h) {
+                mask = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+                mScratchMask = mask;
+            } else {
+                mask.eraseColor(0);
+            }
+            mScratchMaskCanvas.setBitmap(mask);
+            Utilities.drawIcon(maskImage, mScratchMaskCanvas, mContext);
+            mScratchMaskCanvas.setBitmap(null);
+
+            tempCanvas.drawBitmap(mask, 0, 0, paint);
+        }
         paint.setXfermode(null);
     }
 
+    /**
+     * Returns the icon in the most compact form it can be stored in, if compact storage is
+     * enabled. Icons which are fully opaque are stored as RGB_565, which halves their size. They
+     * are dithered on the way, so that their gradients don't band.
+     * Hardware bitmaps aren't used, as icons get drawn into software canvases for drag views and
+     * outlines, and their pixels are read to find their dominant color.
+     *
+     * @param opaque Whether the icon is known to be fully opaque
+     */
+    private Bitmap compactIcon(Bitmap icon, boolean opaque) {
+        if (!mCompactIconStorage || !opaque || icon == null
+                || icon.getConfig() != Bitmap.Config.ARGB_8888) {
+            return icon;
+        }
+        Bitmap compact = Bitmap.createBitmap(icon.getWidth(), icon.getHeight(),
+                Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(compact);
+        canvas.drawBitmap(icon, 0, 0, sDitherPaint);
+        canvas.setBitmap(null);
+        LauncherTrace.incrementCounter(LauncherTrace.COUNTER_ICONS_COMPACTED);
+        LauncherTrace.addToCounter(LauncherTrace.COUNTER_ICON_BYTES_SAVED,
+                icon.getByteCount() - compact.getByteCount());
+        return compact;
+    }
+
+    /**
+     * Compacts an icon which was just rendered, which is only scanned for transparent pixels if
+     * compact storage is enabled.
+     */
+    private Bitmap compactRenderedIcon(Bitmap icon) {
+        return compactIcon(icon, mCompactIconStorage && icon != null && isOpaque(icon));
+    }
+
+    private static boolean isOpaque(Bitmap icon) {
+        final int width = icon.getWidth();
+        final int height = icon.getHeight();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            icon.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                if ((row[x] >>> 24) != 0xff) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Gets an entry for the package, which can be used as a fallback entry for various components.
-     * This method is not thread safe, it must be called from a synchronized method.
      */
-    private CacheEntry getEntryForPackage(String packageName, UserHandleCompat user) {
+    private CacheEntry getEntryForPackage(final String packageName, UserHandleCompat user) {
         ComponentName cn = new ComponentName(packageName, EMPTY_CLASS_NAME);
         CacheKey cacheKey = new CacheKey(cn, user);
         CacheEntry entry = mCache.get(cacheKey);
-        if (entry == null || entry.icon == null) {
-            entry = new CacheEntry();
+        if (entry != null && entry.icon != null) {
+            entry.lastUsed = mUseCount.incrementAndGet();
+            return entry;
+        }
+        LauncherTrace.incrementCounter(LauncherTrace.COUNTER_ICON_CACHE_MISSES);
 
-            try {
-                ApplicationInfo info = mPackageManager.getApplicationInfo(packageName, 0);
-                entry.title = info.loadLabel(mPackageManager);
-                Drawable defaultDrawable = info.loadIcon(mPackageManager);
-                if (mCurrentIconTheme != null) {
-                    entry.icon = createNewIconBitmap(packageName, null, defaultDrawable);
-                }
+        return loadEntry(cacheKey, new Callable<CacheEntry>() {
+            @Override
+            public CacheEntry call() {
+                CacheEntry entry = new CacheEntry();
+                try {
+                    ApplicationInfo info = mPackageManager.getApplicationInfo(packageName, 0);
+                    entry.title = info.loadLabel(mPackageManager);
+                    Drawable defaultDrawable = info.loadIcon(mPackageManager);
+                    if (mCurrentIconTheme != null) {
+                        entry.icon = createNewIconBitmap(packageName, null, defaultDrawable);
+                    }
 
-                if (entry.icon == null) {
-                    // pick default icon
-                    Log.d(TAG, packageName + " icon NOT FOUND in theme = " + mCurrentIconTheme);
-                    entry.icon = Utilities.createIconBitmap(defaultDrawable, mContext);
+                    if (entry.icon == null) {
+                        // pick default icon
+                        Log.d(TAG, packageName + " icon NOT FOUND in theme = " + mCurrentIconTheme);
+                        entry.icon = Utilities.createIconBitmap(defaultDrawable, mContext);
+                    }
+                    entry.icon = compactRenderedIcon(entry.icon);
+                    entry.dominantColor = DominantColors.findDominantColorByHue(entry.icon,
+                            DOMINANT_COLOR_SAMPLES);
+                } catch (NameNotFoundException e) {
+                    if (DEBUG) Log.d(TAG, "Application not installed " + packageName);
                 }
-                mCache.put(cacheKey, entry);
-            } catch (NameNotFoundException e) {
-                if (DEBUG) Log.d(TAG, "Application not installed " + packageName);
+                return entry;
             }
+        });
+    }
+
+    /**
+     * Persistent store of rendered icons and labels, so that a cold start doesn't need to render
+     * every icon again. Rows are only valid for the package version, icon density, icon theme and
+     * locale they were created with.
+     *
+     * Also holds the parsed appfilter index of icon packs, valid for the icon pack version.
+     */
+    private static final class IconDB extends SQLiteOpenHelper {
+        private final static int DB_VERSION = 4;
+        private final static String TABLE_NAME = "icons";
+        private final static String TABLE_ICON_PACKS = "iconPacks";
+        private final static String TABLE_ICON_PACK_DRAWABLES = "iconPackDrawables";
+        private final static String COLUMN_COMPONENT = "componentName";
+        private final static String COLUMN_USER = "profileId";
+        private final static String COLUMN_LAST_UPDATED = "lastUpdated";
+        private final static String COLUMN_ICON_DPI = "iconDpi";
+        private final static String COLUMN_ICON_THEME = "iconTheme";
+        private final static String COLUMN_LOCALE = "locale";
+        private final static String COLUMN_LABEL = "label";
+        private final static String COLUMN_ICON = "icon";
+        private final static String COLUMN_DOMINANT_COLOR = "dominantColor";
+        private final static String COLUMN_OPAQUE = "opaque";
+        private final static String COLUMN_BACKGROUNDS = "backgrounds";
+        private final static String COLUMN_MASK = "mask";
+        private final static String COLUMN_FRONT = "front";
+        private final static String COLUMN_DRAWABLE = "drawable";
+
+        // Drawable resource names can't contain it
+        private final static String BACKGROUNDS_SEPARATOR = ",";
+
+        public IconDB(Context context) {
+            super(context, new File(context.getCacheDir(),
+                    LauncherFiles.APP_ICONS_DB).getPath(), null, DB_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                    COLUMN_COMPONENT + " TEXT NOT NULL, " +
+                    COLUMN_USER + " INTEGER NOT NULL, " +
+                    COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_ICON_DPI + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_ICON_THEME + " TEXT NOT NULL DEFAULT '', " +
+                    COLUMN_LOCALE + " TEXT NOT NULL DEFAULT '', " +
+                    COLUMN_LABEL + " TEXT, " +
+                    COLUMN_ICON + " BLOB NOT NULL, " +
+                    COLUMN_DOMINANT_COLOR + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_OPAQUE + " INTEGER NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") " +
+                    ");");
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_ICON_PACKS + " (" +
+                    COLUMN_ICON_THEME + " TEXT PRIMARY KEY, " +
+                    COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_BACKGROUNDS + " TEXT, " +
+                    COLUMN_MASK + " TEXT, " +
+                    COLUMN_FRONT + " TEXT" +
+                    ");");
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_ICON_PACK_DRAWABLES + " (" +
+                    COLUMN_ICON_THEME + " TEXT NOT NULL, " +
+                    COLUMN_COMPONENT + " TEXT NOT NULL, " +
+                    COLUMN_DRAWABLE + " TEXT NOT NULL, " +
+                    "PRIMARY KEY (" + COLUMN_ICON_THEME + ", " + COLUMN_COMPONENT + ") " +
+                    ");");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion != newVersion) {
+                // This is only a cache, so just start over
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_ICON_PACKS);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_ICON_PACK_DRAWABLES);
+                onCreate(db);
+            }
+        }
+
+        @Override
+        public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            onUpgrade(db, oldVersion, newVersion);
         }
-        return entry;
     }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.content.ComponentName;
+
+import com.android.leanlauncher.compat.UserHandleCompat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Indexes the items of {@link LauncherModel#sBgItemsIdMap} by the package and the component they
+ * point to, so that package changes only visit the items they affect. Maintained alongside
+ * sBgItemsIdMap, under sBgLock.
+ */
+class ItemInfoIndex {
+    private final HashMap<String, ArrayList<ItemInfo>> mItemsByPackage =
+            new HashMap<String, ArrayList<ItemInfo>>();
+    private final HashMap<ComponentName, ArrayList<ItemInfo>> mItemsByComponent =
+            new HashMap<ComponentName, ArrayList<ItemInfo>>();
+    // The component each item was indexed under, so that it can be found again on removal
+    private final HashMap<Long, ComponentName> mIndexedComponents =
+            new HashMap<Long, ComponentName>();
+
+    /**
+     * Returns the component targeted by a shortcut, or provided by a widget, if any.
+     */
+    static ComponentName getComponent(ItemInfo info) {
+        if (info instanceof ShortcutInfo) {
+            return ((ShortcutInfo) info).intent != null
+                    ? ((ShortcutInfo) info).getTargetComponent() : null;
+        } else if (info instanceof LauncherAppWidgetInfo) {
+            return ((LauncherAppWidgetInfo) info).providerName;
+        }
+        return null;
+    }
+
+    void add(ItemInfo info) {
+        remove(info.id);
+        ComponentName cn = getComponent(info);
+        if (cn == null) {
+            return;
+        }
+        mIndexedComponents.put(info.id, cn);
+        addTo(mItemsByPackage, cn.getPackageName(), info);
+        addTo(mItemsByComponent, cn, info);
+    }
+
+    void remove(long id) {
+        ComponentName cn = mIndexedComponents.remove(id);
+        if (cn != null) {
+            removeFrom(mItemsByPackage, cn.getPackageName(), id);
+            removeFrom(mItemsByComponent, cn, id);
+        }
+    }
+
+    void clear() {
+        mItemsByPackage.clear();
+        mItemsByComponent.clear();
+        mIndexedComponents.clear();
+    }
+
+    /**
+     * Returns the items of the package, for all users.
+     */
+    ArrayList<ItemInfo> getItemsForPackage(String packageName) {
+        ArrayList<ItemInfo> items = mItemsByPackage.get(packageName);
+        return items != null ? new ArrayList<ItemInfo>(items) : new ArrayList<ItemInfo>();
+    }
+
+    ArrayList<ItemInfo> getItemsForPackage(String packageName, UserHandleCompat user) {
+        ArrayList<ItemInfo> items = getItemsForPackage(packageName);
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (!user.equals(items.get(i).user)) {
+                items.remove(i);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Returns the items of the component for the user, and those which have no user.
+     */
+    ArrayList<ItemInfo> getItemsForComponent(ComponentName cn, UserHandleCompat user) {
+        ArrayList<ItemInfo> result = new ArrayList<ItemInfo>();
+        ArrayList<ItemInfo> items = mItemsByComponent.get(cn);
+        if (items != null) {
+            for (ItemInfo info : items) {
+                if (info.user == null || info.user.equals(user)) {
+                    result.add(info);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static <K> void addTo(HashMap<K, ArrayList<ItemInfo>> index, K key, ItemInfo info) {
+        ArrayList<ItemInfo> items = index.get(key);
+        if (items == null) {
+            items = new ArrayList<ItemInfo>(1);
+            index.put(key, items);
+        }
+        items.add(info);
+    }
+
+    private static <K> void removeFrom(HashMap<K, ArrayList<ItemInfo>> index, K key, long id) {
+        ArrayList<ItemInfo> items = index.get(key);
+        if (items == null) {
+            return;
+        }
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (items.get(i).id == id) {
+                items.remove(i);
+            }
+        }
+        if (items.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
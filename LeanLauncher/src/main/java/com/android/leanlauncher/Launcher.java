@@ -82,8 +82,10 @@ import com.android.leanlauncher.compat.UserManagerCompat;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -191,6 +193,8 @@ public class Launcher extends Activity
     private ArrayList<Runnable> mOnResumeCallbacks = new ArrayList<>();
     private LauncherModel mModel;
     private IconCache mIconCache;
+    // The caches trimmed on memory pressure
+    private final TrimmableCacheRegistry mTrimmableCaches = new TrimmableCacheRegistry();
     private boolean mUserPresent = true;
     private boolean mVisible = false;
     private boolean mHasFocus = false;
@@ -199,6 +203,10 @@ public class Launcher extends Activity
     private long mAutoAdvanceSentTime;
     private long mAutoAdvanceTimeLeft = -1;
     private ArrayMap<View, AppWidgetProviderInfo> mWidgetsToAdvance = new ArrayMap<>();
+    // Views bound from the workspace snapshot, by item id, until the loader binds the workspace
+    private ArrayMap<Long, View> mSnapshotViews;
+    // Reads the workspace snapshot, until it is bound or the loader starts binding
+    private AsyncTask<Void, Void, ArrayList<WorkspaceSnapshot.Item>> mSnapshotReadTask;
     private int mLastOrientation;
     private final Handler mHandler = new Handler() {
         @Override
@@ -378,6 +386,7 @@ public class Launcher extends Activity
     }
 
     public static void addDumpLog(String tag, String log, Exception e, boolean debugLog) {
+        LauncherTrace.log(tag, e != null ? log + " " + e : log);
         if (debugLog) {
             if (e != null) {
                 Log.d(tag, log, e);
@@ -415,6 +424,7 @@ public class Launcher extends Activity
         mIsSafeModeEnabled = getPackageManager().isSafeMode();
         mModel = app.setLauncher(this);
         mIconCache = app.getIconCache();
+        mTrimmableCaches.register(mIconCache);
         mIconCache.flushInvalidIcons(grid);
         mDragController = new DragController(this);
         mInflater = getLayoutInflater();
@@ -423,6 +433,7 @@ public class Launcher extends Activity
 
         mAppWidgetHost = new LauncherAppWidgetHost(this, APPWIDGET_HOST_ID);
         mAppWidgetHost.startListening();
+        mTrimmableCaches.register(mAppWidgetHost);
 
         // If we are getting an onCreate, we can actually preempt onResume and unset mPaused here,
         // this also ensures that any synchronous binding below doesn't re-trigger another
@@ -450,6 +461,9 @@ public class Launcher extends Activity
         }
 
         if (!mRestoring) {
+            if (!mModel.isWorkspaceLoaded()) {
+                loadWorkspaceSnapshot();
+            }
             // We only load the page synchronously if the user rotates (or triggers a
             // configuration change) while launcher is in the foreground
             mModel.startLoader(true, 0);
@@ -693,6 +707,8 @@ public class Launcher extends Activity
     protected void onStop() {
         super.onStop();
         FirstFrameAnimatorHelper.setIsVisible(false);
+        LauncherModel.flushPendingWrites();
+        mModel.saveWorkspaceSnapshot();
     }
 
     @Override
@@ -729,6 +745,7 @@ public class Launcher extends Activity
         setWorkspaceBackground(mState == State.WORKSPACE);
 
         mPaused = false;
+        mModel.reloadTrimmedIcons();
         if (mRestoring || mOnResumeNeedsLoad) {
             setWorkspaceLoading(true);
             mModel.startLoader(true, PagedView.INVALID_RESTORE_PAGE);
@@ -793,6 +810,7 @@ public class Launcher extends Activity
         mLastOrientation = getResources().getConfiguration().orientation;
         mDragController.cancelDrag();
         mDragController.resetLastGestureUpTime();
+        LauncherModel.flushPendingWrites();
     }
 
     @Override
@@ -868,6 +886,7 @@ public class Launcher extends Activity
         mLauncherView = findViewById(R.id.launcher);
         mDragLayer = (DragLayer) findViewById(R.id.drag_layer);
         mWorkspace = (Workspace) mDragLayer.findViewById(R.id.workspace);
+        mTrimmableCaches.register(mWorkspace.getDragOutlineCache());
 
         mLauncherView.setSystemUiVisibility(
                  View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION);
@@ -927,6 +946,7 @@ public class Launcher extends Activity
         mAppsCustomizeContent = (AppsCustomizePagedView)
                 mAppsCustomizeTabHost.findViewById(R.id.apps_customize_pane_content);
         mAppsCustomizeContent.setup(this, dragController);
+        mTrimmableCaches.register(mAppsCustomizeContent);
 
         // Setup the drag controller (drop targets have to be added in reverse order in priority)
         dragController.setScrollView(mDragLayer);
@@ -973,6 +993,103 @@ public class Launcher extends Activity
         return favorite;
     }
 
+    /**
+     * Shows the shortcuts saved in the workspace snapshot while the loader reads the workspace,
+     * so that a cold start doesn't show an empty workspace. The workspace stays locked, and clicks
+     * on the snapshot views are ignored, until the loader has bound the real items, which then
+     * take over the snapshot views. The snapshot is read and its icons decoded in the background,
+     * and it is dropped if the loader starts binding first.
+     */
+    private void loadWorkspaceSnapshot() {
+        final DeviceProfile grid =
+                LauncherAppState.getInstance().getDynamicGrid().getDeviceProfile();
+        mSnapshotReadTask = new AsyncTask<Void, Void, ArrayList<WorkspaceSnapshot.Item>>() {
+            @Override
+            protected ArrayList<WorkspaceSnapshot.Item> doInBackground(Void... unused) {
+                return WorkspaceSnapshot.read(Launcher.this, grid);
+            }
+
+            @Override
+            protected void onPostExecute(ArrayList<WorkspaceSnapshot.Item> items) {
+                mSnapshotReadTask = null;
+                bindWorkspaceSnapshot(items);
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void cancelWorkspaceSnapshot() {
+        if (mSnapshotReadTask != null) {
+            mSnapshotReadTask.cancel(false);
+            mSnapshotReadTask = null;
+        }
+    }
+
+    private void bindWorkspaceSnapshot(ArrayList<WorkspaceSnapshot.Item> items) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+
+        mWorkspace.addNewWorkspace();
+        mSnapshotViews = new ArrayMap<>(items.size());
+        for (WorkspaceSnapshot.Item item : items) {
+            BubbleTextView favorite = (BubbleTextView) mInflater.inflate(R.layout.application,
+                    mWorkspace.getScreen(), false);
+            favorite.applyFromShortcutInfo(item.info, item.icon, true, true);
+            favorite.setOnClickListener(this);
+            mWorkspace.addInScreenFromBind(favorite, item.info.container, item.info.cellX,
+                    item.info.cellY, 1, 1);
+            mSnapshotViews.put(item.info.id, favorite);
+        }
+    }
+
+    /**
+     * Returns the snapshot view standing in for the item, if it is still in the right place.
+     * Otherwise removes the snapshot views in the way of the item, so that it can be added.
+     */
+    private View takeSnapshotView(ItemInfo item) {
+        if (mSnapshotViews == null) {
+            return null;
+        }
+        View view = mSnapshotViews.get(item.id);
+        if (view != null && isAtSameCell((ItemInfo) view.getTag(), item)) {
+            mSnapshotViews.remove(item.id);
+            return view;
+        }
+
+        for (int i = mSnapshotViews.size() - 1; i >= 0; i--) {
+            View snapshotView = mSnapshotViews.valueAt(i);
+            if (mSnapshotViews.keyAt(i) == item.id
+                    || isAtSameCell((ItemInfo) snapshotView.getTag(), item)) {
+                mWorkspace.getScreen().removeView(snapshotView);
+                mSnapshotViews.removeAt(i);
+            }
+        }
+        return null;
+    }
+
+    private boolean isSnapshotView(View v) {
+        return mSnapshotViews != null && mSnapshotViews.indexOfValue(v) >= 0;
+    }
+
+    /**
+     * Removes the views of the items bound since the loader started, keeping the snapshot views
+     * which no item has taken over yet.
+     */
+    private void removeBoundViewsOverSnapshot() {
+        final CellLayout screen = mWorkspace.getScreen();
+        final ShortcutAndWidgetContainer container = screen.getShortcutsAndWidgets();
+        for (int i = container.getChildCount() - 1; i >= 0; i--) {
+            View child = container.getChildAt(i);
+            if (!isSnapshotView(child)) {
+                screen.removeView(child);
+            }
+        }
+    }
+
+    private static boolean isAtSameCell(ItemInfo a, ItemInfo b) {
+        return a.container == b.container && a.cellX == b.cellX && a.cellY == b.cellY;
+    }
+
     /**
      * Add a shortcut to the workspace.
      */
@@ -1361,6 +1478,8 @@ public class Launcher extends Activity
     public void onDestroy() {
         super.onDestroy();
 
+        cancelWorkspaceSnapshot();
+
         // Remove all pending runnables
         mHandler.removeMessages(ADVANCE_MSG);
         mHandler.removeMessages(0);
@@ -1610,6 +1729,11 @@ public class Launcher extends Activity
             return;
         }
 
+        // The intents of the snapshot haven't been checked against the installed apps yet
+        if (isSnapshotView(v)) {
+            return;
+        }
+
         if (v instanceof CellLayout || v instanceof Workspace) {
             if (mWorkspace.isInOverviewMode()) {
                 mWorkspace.exitOverviewMode(true);
@@ -2487,6 +2611,13 @@ public class Launcher extends Activity
         }
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        LauncherTrace.dump(prefix, writer);
+        mTrimmableCaches.dump(prefix, writer);
+    }
+
     @Override
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
@@ -2494,12 +2625,8 @@ public class Launcher extends Activity
             // The widget preview db can result in holding onto over
             // 3MB of memory for caching which isn't necessary.
             SQLiteDatabase.releaseMemory();
-
-            // This clears all widget bitmaps from the widget tray
-            if (mAppsCustomizeTabHost != null) {
-                mAppsCustomizeTabHost.trimMemory();
-            }
         }
+        mTrimmableCaches.trimMemory(level);
     }
 
     protected void showWorkspace(boolean animated) {
@@ -2687,15 +2814,23 @@ public class Launcher extends Activity
      */
     public void startBinding() {
         setWorkspaceLoading(true);
+        // Too late for the snapshot, the real items are about to be bound
+        cancelWorkspaceSnapshot();
 
         // If we're starting binding all over again, clear any bind calls we'd postponed in
         // the past (see waitUntilResume) -- we don't need them since we're starting binding
         // from scratch again
         mBindOnResumeCallbacks.clear();
 
-        // Clear the workspace because it's going to be rebound
+        // Clear the workspace because it's going to be rebound, unless it is showing the workspace
+        // snapshot, whose views are reused or removed as the items are bound. If the loader
+        // started over before it finished binding, the items it bound already are removed.
         mWorkspace.clearDropTargets();
-        mWorkspace.removeAllWorkspace();
+        if (mSnapshotViews == null) {
+            mWorkspace.removeAllWorkspace();
+        } else {
+            removeBoundViewsOverSnapshot();
+        }
 
         mWidgetsToAdvance.clear();
     }
@@ -2763,6 +2898,12 @@ public class Launcher extends Activity
                 case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
                 case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
                     ShortcutInfo info = (ShortcutInfo) item;
+                    View snapshotView = takeSnapshotView(item);
+                    if (snapshotView != null) {
+                        ((BubbleTextView) snapshotView).applyFromShortcutInfoFromLauncher(info,
+                                mIconCache, true);
+                        break;
+                    }
                     View shortcut = createShortcut(info);
 
                     workspace.addInScreenFromBind(shortcut, item.container, item.cellX,
@@ -2923,6 +3064,14 @@ public class Launcher extends Activity
             mSavedState = null;
         }
 
+        if (mSnapshotViews != null) {
+            // Remove the snapshot views of items which are gone
+            for (int i = 0; i < mSnapshotViews.size(); i++) {
+                mWorkspace.getScreen().removeView(mSnapshotViews.valueAt(i));
+            }
+            mSnapshotViews = null;
+        }
+
         setWorkspaceLoading(false);
 
         // If we received the result of any pending adds while the loader was running (e.g. the
@@ -2955,6 +3104,27 @@ public class Launcher extends Activity
         }
     }
 
+    /**
+     * Add the next page of icons for all apps, after the first one was bound by
+     * {@link #bindAllApplications(ArrayList)}.
+     * <p/>
+     * Implementation of the method from LauncherModel.Callbacks.
+     */
+    public void bindAllApplicationsPage(final ArrayList<AppInfo> apps) {
+        Runnable r = new Runnable() {
+            public void run() {
+                bindAllApplicationsPage(apps);
+            }
+        };
+        if (waitUntilResume(r)) {
+            return;
+        }
+
+        if (mAppsCustomizeContent != null) {
+            mAppsCustomizeContent.addApps(apps);
+        }
+    }
+
     /**
      * A package was updated.
      * <p/>
@@ -3078,6 +3248,20 @@ public class Launcher extends Activity
         }
     }
 
+    /**
+     * Returns the apps on the current page of all apps, which are updated first when the icon
+     * theme changes.
+     * <p/>
+     * Implementation of the method from LauncherModel.Callbacks.
+     */
+    @Override
+    public ArrayList<AppInfo> getAllAppsOnCurrentPage() {
+        if (mAppsCustomizeContent != null) {
+            return mAppsCustomizeContent.getAppsOnCurrentPage();
+        }
+        return new ArrayList<AppInfo>();
+    }
+
     public void lockScreenOrientation(int orientation) {
         if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.JELLY_BEAN_MR2) {
             setRequestedOrientation(orientation);
@@ -19,8 +19,12 @@ package com.android.leanlauncher;
 import android.appwidget.AppWidgetHost;
 import android.appwidget.AppWidgetHostView;
 import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.os.TransactionTooLargeException;
+import android.util.Log;
+import android.util.SparseArray;
 
 import java.util.ArrayList;
 
@@ -28,10 +32,19 @@ import java.util.ArrayList;
  * Specific {@link AppWidgetHost} that creates our {@link LauncherAppWidgetHostView}
  * which correctly captures all long-press events. This ensures that users can
  * always pick up and move widgets.
+ *
+ * The views taken off the workspace to be inflated again in another orientation are kept, by the
+ * orientation their layout was inflated in, so that going back to that orientation only has to
+ * reapply the latest RemoteViews to them.
  */
-public class LauncherAppWidgetHost extends AppWidgetHost {
+public class LauncherAppWidgetHost extends AppWidgetHost implements TrimmableCache {
+    private static final String TAG = "Launcher.LauncherAppWidgetHost";
+    private static final boolean DEBUG = false;
 
     private final ArrayList<Runnable> mProviderChangeListeners = new ArrayList<Runnable>();
+    // Detached views by orientation, then by app widget id
+    private final SparseArray<SparseArray<LauncherAppWidgetHostView>> mCachedViews =
+            new SparseArray<SparseArray<LauncherAppWidgetHostView>>();
 
     public LauncherAppWidgetHost(Launcher launcher, int hostId) {
         super(launcher, hostId);
@@ -40,9 +53,53 @@ public class LauncherAppWidgetHost extends AppWidgetHost {
     @Override
     protected AppWidgetHostView onCreateView(Context context, int appWidgetId,
             AppWidgetProviderInfo appWidget) {
+        final int orientation = context.getResources().getConfiguration().orientation;
+        final SparseArray<LauncherAppWidgetHostView> views = mCachedViews.get(orientation);
+        final LauncherAppWidgetHostView cached = views != null ? views.get(appWidgetId) : null;
+        if (cached != null) {
+            views.remove(appWidgetId);
+            // createView reapplies the latest RemoteViews, which only inflates the layout again
+            // if the provider changed it
+            if (cached.getContext() == context && appWidget != null
+                    && cached.getAppWidgetInfo() != null
+                    && appWidget.provider.equals(cached.getAppWidgetInfo().provider)) {
+                if (DEBUG) {
+                    Log.d(TAG, "Reusing the view of widget " + appWidgetId + " for orientation "
+                            + orientation);
+                }
+                return cached;
+            }
+        }
         return new LauncherAppWidgetHostView(context);
     }
 
+    /**
+     * Keeps a view taken off the workspace, in place of the one kept for the orientation its
+     * layout was inflated in, if any.
+     */
+    void cacheView(LauncherAppWidgetHostView view) {
+        final int orientation = view.getInflatedOrientation();
+        if (view instanceof PendingAppWidgetHostView || view.getParent() != null
+                || view.getAppWidgetInfo() == null
+                || orientation == Configuration.ORIENTATION_UNDEFINED) {
+            return;
+        }
+        SparseArray<LauncherAppWidgetHostView> views = mCachedViews.get(orientation);
+        if (views == null) {
+            views = new SparseArray<LauncherAppWidgetHostView>();
+            mCachedViews.put(orientation, views);
+        }
+        views.put(view.getAppWidgetId(), view);
+    }
+
+    @Override
+    public void deleteAppWidgetId(int appWidgetId) {
+        super.deleteAppWidgetId(appWidgetId);
+        for (int i = 0; i < mCachedViews.size(); i++) {
+            mCachedViews.valueAt(i).remove(appWidgetId);
+        }
+    }
+
     @Override
     public void startListening() {
         try {
@@ -63,6 +120,7 @@ public class LauncherAppWidgetHost extends AppWidgetHost {
     public void stopListening() {
         super.stopListening();
         clearViews();
+        mCachedViews.clear();
     }
 
     public void addProviderChangeListener(Runnable callback) {
@@ -80,4 +138,34 @@ public class LauncherAppWidgetHost extends AppWidgetHost {
             callback.run();
         }
     }
+
+    @Override
+    public String getCacheName() {
+        return "widgetViews";
+    }
+
+    /**
+     * Returns the size of the layers the cached views would be drawn into, as they hold no bitmap
+     * of their own.
+     */
+    @Override
+    public long getCacheSizeBytes() {
+        long size = 0;
+        for (int i = 0; i < mCachedViews.size(); i++) {
+            SparseArray<LauncherAppWidgetHostView> views = mCachedViews.valueAt(i);
+            for (int j = 0; j < views.size(); j++) {
+                size += views.valueAt(j).getWidth() * views.valueAt(j).getHeight() * 4L;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void trimCache(int level) {
+        // Kept while in the background, which is when the other orientation is usually shown
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mCachedViews.clear();
+        }
+    }
 }
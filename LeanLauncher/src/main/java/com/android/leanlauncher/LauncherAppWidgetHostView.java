@@ -18,6 +18,7 @@ package com.android.leanlauncher;
 
 import android.appwidget.AppWidgetHostView;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -37,6 +38,11 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView implements Touc
     private CheckLongPressHelper mLongPressHelper;
     private Context mContext;
     private int mPreviousOrientation;
+    // The orientation in which the layout of the widget was inflated, as opposed to reapplied
+    private int mInflatedOrientation = Configuration.ORIENTATION_UNDEFINED;
+    // Changes whenever a layout of a widget is inflated, in this or any other host view
+    private static int sNextLayoutGeneration;
+    private int mLayoutGeneration = sNextLayoutGeneration++;
     private DragLayer mDragLayer;
 
     private float mSlop;
@@ -58,7 +64,27 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView implements Touc
     public void updateAppWidget(RemoteViews remoteViews) {
         // Store the orientation in which the widget was inflated
         mPreviousOrientation = mContext.getResources().getConfiguration().orientation;
+        final View content = getChildAt(0);
         super.updateAppWidget(remoteViews);
+        if (getChildAt(0) != content) {
+            mInflatedOrientation = mPreviousOrientation;
+            mLayoutGeneration = sNextLayoutGeneration++;
+        }
+    }
+
+    /**
+     * Returns the generation of the layout of the widget, which no other layout shares.
+     */
+    int getLayoutGeneration() {
+        return mLayoutGeneration;
+    }
+
+    /**
+     * Returns the orientation in which the layout of the widget was last inflated, which the
+     * updates reapplied since then didn't change.
+     */
+    int getInflatedOrientation() {
+        return mInflatedOrientation;
     }
 
     public boolean isReinflateRequired() {
@@ -28,4 +28,7 @@ public class LauncherFiles {
     public static final String LAUNCHER_PREFERENCES = "launcher.preferences";
     public static final String SHARED_PREFERENCES_KEY = "com.android.leanlauncher.prefs";
     public static final String WIDGET_PREVIEWS_DB = "widgetpreviews.db";
+    public static final String WIDGET_PREVIEWS_DIR = "widgetpreviews";
+    public static final String APP_ICONS_DB = "app_icons.db";
+    public static final String WORKSPACE_SNAPSHOT = "workspace.snapshot";
 }
@@ -50,6 +50,7 @@ import com.android.leanlauncher.compat.UserManagerCompat;
 
 import java.lang.ref.WeakReference;
 import java.net.URISyntaxException;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -58,8 +59,17 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Maintains in-memory state of the Launcher. It is expected that there should be only one
@@ -73,18 +83,23 @@ public class LauncherModel extends BroadcastReceiver
 
     static final String TAG = "Launcher.Model";
 
-    private static final int ITEMS_CHUNK = 6; // batch size for the workspace icons
     private static final String SYSTEM_READY = "com.android.launcher.SYSTEM_READY";
 
     private final boolean mAppsCanBeOnRemoveableStorage;
 
     private final LauncherAppState mApp;
+    // Package events waiting to be applied, merged per user
+    private final ArrayMap<UserHandleCompat, PackageUpdatedTask> mPendingPackageUpdates =
+            new ArrayMap<>();
+    private long mFirstPendingPackageEventTime;
+    // Incremented on each icon theme change, so that the previous theme update stops
+    private final AtomicInteger mIconThemeGeneration = new AtomicInteger();
     private final Object mLock = new Object();
-    private DeferredHandler mHandler = new DeferredHandler();
+    private BindScheduler mHandler = new BindScheduler();
     private LoaderTask mLoaderTask;
     private boolean mIsLoaderTaskRunning;
 
-    // Specific runnable types that are run on the main thread deferred handler, this allows us to
+    // Specific runnable types that are run on the main thread bind scheduler, this allows us to
     // clear all queued binding runnables when the Launcher activity is destroyed.
     private static final int MAIN_THREAD_NORMAL_RUNNABLE = 0;
     private static final int MAIN_THREAD_BINDING_RUNNABLE = 1;
@@ -95,6 +110,59 @@ public class LauncherModel extends BroadcastReceiver
     }
     private static final Handler sWorker = new Handler(sWorkerThread.getLooper());
 
+    // Writes to the favorites table are queued on the worker thread, and applied together shortly
+    // after the first one, or as soon as flushPendingWrites() is called
+    private static final int PENDING_WRITES_FLUSH_DELAY = 300;
+    // Writes which couldn't be applied are kept, and tried again after this long
+    private static final int PENDING_WRITES_RETRY_DELAY = 1000;
+    // Before the workspace is loaded, writes which couldn't be applied are tried again right away
+    private static final int PENDING_WRITES_LOAD_ATTEMPTS = 3;
+    private static final int PENDING_WRITES_LOAD_RETRY_DELAY = 100;
+    private static final WorkspaceWriteQueue sPendingWrites = new WorkspaceWriteQueue();
+    private static final Runnable sFlushPendingWrites = new Runnable() {
+        public void run() {
+            if (!sPendingWrites.flush(
+                    LauncherAppState.getInstance().getContext().getContentResolver())) {
+                sWorker.removeCallbacks(this);
+                sWorker.postDelayed(this, PENDING_WRITES_RETRY_DELAY);
+            }
+        }
+    };
+
+    // Number of apps re-rendered and bound together when the icon theme changes
+    private static final int ICON_THEME_BATCH_SIZE = 24;
+
+    // Package events are coalesced until none came in for this long, but no longer than the max
+    private static final int PACKAGE_EVENTS_DELAY = 250;
+    private static final int PACKAGE_EVENTS_MAX_DELAY = 1000;
+
+    // Whether the workspace has changed since the workspace snapshot was last saved
+    private static volatile boolean sWorkspaceSnapshotStale = true;
+
+    // Bounded pool used by the loader to resolve labels and icons in parallel. Idle threads
+    // time out, so the pool costs nothing once loading is done.
+    private static final int LOADER_POOL_SIZE =
+            Math.max(1, Runtime.getRuntime().availableProcessors());
+    static final ThreadPoolExecutor sLoaderPool = new ThreadPoolExecutor(LOADER_POOL_SIZE,
+            LOADER_POOL_SIZE, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "launcher-loader-" + mCount.getAndIncrement());
+                }
+            });
+    static {
+        sLoaderPool.allowCoreThreadTimeOut(true);
+    }
+
     // We start off with everything not loaded.  After that, we assume that
     // our monitoring of the package manager provides all updates and we never
     // need to do a requery.  These are only ever touched from the loader thread.
@@ -122,6 +190,10 @@ public class LauncherModel extends BroadcastReceiver
     // LauncherModel to their ids
     static final HashMap<Long, ItemInfo> sBgItemsIdMap = new HashMap<>();
 
+    // sBgItemsIndex indexes the items of sBgItemsIdMap by package and component. Items must be
+    // put in and removed from sBgItemsIdMap through putBgItem() and removeBgItem().
+    static final ItemInfoIndex sBgItemsIndex = new ItemInfoIndex();
+
     // sBgWorkspaceItems is passed to bindItems, which expects a list of all shortcuts
     //       created by LauncherModel that are directly on the home screen (however, no widgets)
     static final ArrayList<ItemInfo> sBgWorkspaceItems = new ArrayList<ItemInfo>();
@@ -154,6 +226,7 @@ public class LauncherModel extends BroadcastReceiver
         void finishBindingItems();
         void bindAppWidget(LauncherAppWidgetInfo info);
         void bindAllApplications(ArrayList<AppInfo> apps);
+        void bindAllApplicationsPage(ArrayList<AppInfo> apps);
         void bindAppsAdded(long newScreen,
                            ArrayList<ItemInfo> addNotAnimated,
                            ArrayList<ItemInfo> addAnimated,
@@ -165,6 +238,7 @@ public class LauncherModel extends BroadcastReceiver
         void bindComponentsRemoved(ArrayList<String> packageNames,
                                    ArrayList<AppInfo> appInfos, UserHandleCompat user, int reason);
         void bindPackagesUpdated(ArrayList<Object> widgetsAndShortcuts);
+        ArrayList<AppInfo> getAllAppsOnCurrentPage();
     }
 
     public interface ItemInfoFilter {
@@ -194,7 +268,7 @@ public class LauncherModel extends BroadcastReceiver
     private void runOnMainThread(Runnable r, int type) {
         if (sWorkerThread.getThreadId() == Process.myTid()) {
             // If we are on the worker thread, post onto the main handler
-            mHandler.post(r);
+            mHandler.post(r, type);
         } else {
             r.run();
         }
@@ -211,30 +285,38 @@ public class LauncherModel extends BroadcastReceiver
         }
     }
 
-    public void addAppsToAllApps(final Context ctx, final ArrayList<AppInfo> allAppsApps) {
-        final Callbacks callbacks = getCallback();
-
-        if (allAppsApps == null) {
-            throw new RuntimeException("allAppsApps must not be null");
-        }
-        if (allAppsApps.isEmpty()) {
-            return;
+    private static void schedulePendingWritesFlush(boolean firstPendingWrite) {
+        sWorkspaceSnapshotStale = true;
+        if (firstPendingWrite) {
+            sWorker.postDelayed(sFlushPendingWrites, PENDING_WRITES_FLUSH_DELAY);
         }
+    }
 
-        // Process the newly added applications and add them to the database first
-        Runnable r = new Runnable() {
-            public void run() {
-                runOnMainThread(new Runnable() {
-                    public void run() {
-                        Callbacks cb = getCallback();
-                        if (callbacks == cb && cb != null) {
-                            callbacks.bindAppsAdded(0, null, null, allAppsApps);
-                        }
-                    }
-                });
+    /**
+     * Applies the queued item writes to the database right away, on the worker thread.
+     */
+    static void flushPendingWrites() {
+        sWorker.removeCallbacks(sFlushPendingWrites);
+        runOnWorkerThread(sFlushPendingWrites);
+    }
+
+    /**
+     * Applies the queued item writes before the workspace is read from the db, so that the loaded
+     * model includes them. Writes which can't be applied are tried again a few times, and then
+     * left queued for the regular retries. Must be called on the worker thread.
+     * @return false if writes are still pending
+     */
+    private static boolean flushPendingWritesBeforeLoad(ContentResolver cr) {
+        sWorker.removeCallbacks(sFlushPendingWrites);
+        for (int attempt = 1; !sPendingWrites.flush(cr); attempt++) {
+            Log.w(TAG, "Workspace writes still pending before loading, attempt " + attempt);
+            if (attempt == PENDING_WRITES_LOAD_ATTEMPTS) {
+                sWorker.postDelayed(sFlushPendingWrites, PENDING_WRITES_RETRY_DELAY);
+                return false;
             }
-        };
-        runOnWorkerThread(r);
+            SystemClock.sleep(PENDING_WRITES_LOAD_RETRY_DELAY);
+        }
+        return true;
     }
 
     public void unbindItemInfosAndClearQueuedBindRunnables() {
@@ -295,12 +377,10 @@ public class LauncherModel extends BroadcastReceiver
     static void updateItemInDatabaseHelper(Context context, final ContentValues values,
             final ItemInfo item) {
         final long itemId = item.id;
-        final Uri uri = LauncherSettings.Favorites.getContentUri(itemId, false);
-        final ContentResolver cr = context.getContentResolver();
 
         Runnable r = new Runnable() {
             public void run() {
-                cr.update(uri, values, null, null);
+                schedulePendingWritesFlush(sPendingWrites.update(itemId, values));
                 updateItemArrays(item, itemId);
             }
         };
@@ -312,6 +392,10 @@ public class LauncherModel extends BroadcastReceiver
         return (ArrayList<AppInfo>) mBgAllAppsList.data.clone();
     }
 
+    public AppSearchIndex getAppSearchIndex() {
+        return mBgAllAppsList.searchIndex;
+    }
+
     static void updateItemArrays(ItemInfo item, long itemId) {
         // Lock on mBgLock *after* the db operation
         synchronized (sBgLock) {
@@ -326,6 +410,10 @@ public class LauncherModel extends BroadcastReceiver
             // as in Workspace.onDrop. Here, we just add/remove them from the list of items
             // that are on the desktop, as appropriate
             ItemInfo modelItem = sBgItemsIdMap.get(itemId);
+            if (modelItem != null) {
+                // The update may have changed the intent, and so the component it is indexed by
+                putBgItem(modelItem);
+            }
             if (modelItem != null &&
                     (modelItem.container == LauncherSettings.Favorites.CONTAINER_DESKTOP)) {
                 switch (modelItem.itemType) {
@@ -403,7 +491,6 @@ public class LauncherModel extends BroadcastReceiver
         item.cellY = cellY;
 
         final ContentValues values = new ContentValues();
-        final ContentResolver cr = context.getContentResolver();
         item.onAddToDatabase(context, values);
 
         item.id = LauncherAppState.getLauncherProvider().generateNewItemId();
@@ -412,12 +499,11 @@ public class LauncherModel extends BroadcastReceiver
 
         Runnable r = new Runnable() {
             public void run() {
-                cr.insert(notify ? LauncherSettings.Favorites.CONTENT_URI :
-                        LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION, values);
+                schedulePendingWritesFlush(sPendingWrites.insert(item.id, values, notify));
 
                 // Lock on mBgLock *after* the db operation
                 synchronized (sBgLock) {
-                    sBgItemsIdMap.put(item.id, item);
+                    putBgItem(item);
                     switch (item.itemType) {
                         case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
                         case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
@@ -440,15 +526,27 @@ public class LauncherModel extends BroadcastReceiver
         runOnWorkerThread(r);
     }
 
+    /**
+     * Adds or replaces an item of sBgItemsIdMap, and indexes it. Must be called under sBgLock.
+     */
+    private static void putBgItem(ItemInfo item) {
+        sBgItemsIdMap.put(item.id, item);
+        sBgItemsIndex.add(item);
+    }
+
+    /**
+     * Removes an item from sBgItemsIdMap and its index. Must be called under sBgLock.
+     */
+    private static void removeBgItem(long id) {
+        sBgItemsIdMap.remove(id);
+        sBgItemsIndex.remove(id);
+    }
+
     private static ArrayList<ItemInfo> getItemsByPackageName(
             final String pn, final UserHandleCompat user) {
-        ItemInfoFilter filter  = new ItemInfoFilter() {
-            @Override
-            public boolean filterItem(ItemInfo parent, ItemInfo info, ComponentName cn) {
-                return cn.getPackageName().equals(pn) && info.user.equals(user);
-            }
-        };
-        return filterItemInfos(sBgItemsIdMap.values(), filter);
+        synchronized (sBgLock) {
+            return sBgItemsIndex.getItemsForPackage(pn, user);
+        }
     }
 
     /**
@@ -476,13 +574,10 @@ public class LauncherModel extends BroadcastReceiver
      * @param items
      */
     static void deleteItemsFromDatabase(Context context, final ArrayList<? extends ItemInfo> items) {
-        final ContentResolver cr = context.getContentResolver();
-
         Runnable r = new Runnable() {
             public void run() {
                 for (ItemInfo item : items) {
-                    final Uri uri = LauncherSettings.Favorites.getContentUri(item.id, false);
-                    cr.delete(uri, null, null);
+                    schedulePendingWritesFlush(sPendingWrites.delete(item.id));
 
                     // Lock on mBgLock *after* the db operation
                     synchronized (sBgLock) {
@@ -495,7 +590,7 @@ public class LauncherModel extends BroadcastReceiver
                                 sBgAppWidgets.remove(item);
                                 break;
                         }
-                        sBgItemsIdMap.remove(item.id);
+                        removeBgItem(item.id);
                     }
                 }
             }
@@ -574,6 +669,8 @@ public class LauncherModel extends BroadcastReceiver
         final String action = intent.getAction();
         if (Intent.ACTION_LOCALE_CHANGED.equals(action)) {
             // If we have changed locale we need to clear out the labels in all apps/workspace.
+            // The collation keys of the apps follow the new collator.
+            AppNameComparator.resetCollator();
             forceReload();
         } else if (Intent.ACTION_CONFIGURATION_CHANGED.equals(action)) {
              // Check if configuration change was an mcc/mnc change which would affect app resources
@@ -701,6 +798,7 @@ public class LauncherModel extends BroadcastReceiver
 
     /** Loads the workspace db */
     private static Long loadWorkspaceDb(Context context) {
+        flushPendingWrites();
         final ContentResolver contentResolver = context.getContentResolver();
         final Uri screensUri = LauncherSettings.Favorites.CONTENT_URI;
         final Cursor sc = contentResolver.query(screensUri, null, null, null, null);
@@ -722,6 +820,32 @@ public class LauncherModel extends BroadcastReceiver
         return screenId;
     }
 
+    public boolean isWorkspaceLoaded() {
+        return mWorkspaceLoaded;
+    }
+
+    /**
+     * Saves the shortcuts on the workspace, if they changed, so that the next cold start can show
+     * them right away.
+     */
+    public void saveWorkspaceSnapshot() {
+        runOnWorkerThread(new Runnable() {
+            public void run() {
+                if (!mWorkspaceLoaded || !sWorkspaceSnapshotStale) {
+                    return;
+                }
+                sWorkspaceSnapshotStale = false;
+
+                final ArrayList<ItemInfo> workspaceItems = new ArrayList<ItemInfo>();
+                synchronized (sBgLock) {
+                    workspaceItems.addAll(sBgWorkspaceItems);
+                }
+                WorkspaceSnapshot.write(mApp.getContext(), workspaceItems, mIconCache,
+                        mApp.getDynamicGrid().getDeviceProfile());
+            }
+        });
+    }
+
     public boolean isAllAppsLoaded() {
         return mAllAppsLoaded;
     }
@@ -745,7 +869,8 @@ public class LauncherModel extends BroadcastReceiver
         private Context mContext;
         private boolean mIsLaunching;
         private boolean mIsLoadingAndBindingWorkspace;
-        private boolean mStopped;
+        // Set under the lock of the task, but also polled without it while loading
+        private volatile boolean mStopped;
         private boolean mLoadAndBindStepFinished;
 
         private ArrayMap<Object, CharSequence> mLabelCache;
@@ -773,7 +898,13 @@ public class LauncherModel extends BroadcastReceiver
             }
 
             if (!mWorkspaceLoaded) {
-                loadWorkspace();
+                final long loadStart =
+                        LauncherTrace.beginPhase(LauncherTrace.PHASE_LOAD_WORKSPACE);
+                try {
+                    loadWorkspace();
+                } finally {
+                    LauncherTrace.endPhase(LauncherTrace.PHASE_LOAD_WORKSPACE, loadStart);
+                }
                 synchronized (LoaderTask.this) {
                     if (!mStopped) {
                         mWorkspaceLoaded = true;
@@ -783,6 +914,7 @@ public class LauncherModel extends BroadcastReceiver
 
             // Bind the workspace
             bindWorkspace(0);
+            saveWorkspaceSnapshot();
         }
 
         private void waitForIdle() {
@@ -1002,6 +1134,7 @@ public class LauncherModel extends BroadcastReceiver
                 sBgWorkspaceItems.clear();
                 sBgAppWidgets.clear();
                 sBgItemsIdMap.clear();
+                sBgItemsIndex.clear();
                 sBgWorkspaceScreenId = 0;
             }
         }
@@ -1014,6 +1147,12 @@ public class LauncherModel extends BroadcastReceiver
 
             final Context context = mContext;
             final ContentResolver contentResolver = context.getContentResolver();
+
+            // Make sure the db is up to date with the changes made since the last load
+            if (!flushPendingWritesBeforeLoad(contentResolver)) {
+                Launcher.addDumpLog(TAG, "loadWorkspace: loading without the pending writes",
+                        true);
+            }
             final PackageManager manager = context.getPackageManager();
             final AppWidgetManager widgets = AppWidgetManager.getInstance(context);
             final boolean isSafeMode = manager.isSafeMode();
@@ -1187,7 +1326,7 @@ public class LauncherModel extends BroadcastReceiver
                                     default:
                                         break;
                                     }
-                                    sBgItemsIdMap.put(info.id, info);
+                                    putBgItem(info);
                                 } else {
                                     throw new RuntimeException("Unexpected null ShortcutInfo");
                                 }
@@ -1290,7 +1429,7 @@ public class LauncherModel extends BroadcastReceiver
                                         String[] args = {Long.toString(id)};
                                         contentResolver.update(contentUri, values, where, args);
                                     }
-                                    sBgItemsIdMap.put(appWidgetInfo.id, appWidgetInfo);
+                                    putBgItem(appWidgetInfo);
                                     sBgAppWidgets.add(appWidgetInfo);
                                 }
                                 break;
@@ -1383,37 +1522,26 @@ public class LauncherModel extends BroadcastReceiver
 
         private void bindWorkspaceItems(final Callbacks oldCallbacks,
                 final ArrayList<ItemInfo> workspaceItems,
-                final ArrayList<LauncherAppWidgetInfo> appWidgets,
-                ArrayList<Runnable> deferredBindRunnables) {
-
-            final boolean postOnMainThread = (deferredBindRunnables != null);
-
-            // Bind the workspace items
-            int N = workspaceItems.size();
-            for (int i = 0; i < N; i += ITEMS_CHUNK) {
-                final int start = i;
-                final int chunkSize = (i+ITEMS_CHUNK <= N) ? ITEMS_CHUNK : (N-i);
-                final Runnable r = new Runnable() {
-                    @Override
-                    public void run() {
-                        Callbacks callbacks = tryGetCallbacks(oldCallbacks);
-                        if (callbacks != null) {
-                            callbacks.bindItems(workspaceItems, start, start+chunkSize,
-                                    false);
-                        }
-                    }
-                };
-                if (postOnMainThread) {
-                    synchronized (deferredBindRunnables) {
-                        deferredBindRunnables.add(r);
+                final ArrayList<LauncherAppWidgetInfo> appWidgets) {
+            // Bind the workspace items, as many per frame as the bind scheduler fits
+            final int itemCount = workspaceItems.size();
+            final BindScheduler.Batch batch = new BindScheduler.Batch() {
+                @Override
+                public void run(int start, int end) {
+                    Callbacks callbacks = tryGetCallbacks(oldCallbacks);
+                    if (callbacks != null) {
+                        callbacks.bindItems(workspaceItems, start, end, false);
                     }
-                } else {
-                    runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
                 }
+            };
+            if (sWorkerThread.getThreadId() == Process.myTid()) {
+                mHandler.postBatch(batch, itemCount, MAIN_THREAD_BINDING_RUNNABLE);
+            } else {
+                batch.run(0, itemCount);
             }
 
             // Bind the widgets, one at a time
-            N = appWidgets.size();
+            final int N = appWidgets.size();
             for (int i = 0; i < N; i++) {
                 final LauncherAppWidgetInfo widget = appWidgets.get(i);
                 final Runnable r = new Runnable() {
@@ -1424,11 +1552,7 @@ public class LauncherModel extends BroadcastReceiver
                         }
                     }
                 };
-                if (postOnMainThread) {
-                    deferredBindRunnables.add(r);
-                } else {
-                    runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
-                }
+                runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
             }
         }
 
@@ -1481,7 +1605,7 @@ public class LauncherModel extends BroadcastReceiver
             mIconCache.loadIconPackDrawables();
 
             // Load items on the current page
-            bindWorkspaceItems(oldCallbacks, workspaceItems, appWidgets, null);
+            bindWorkspaceItems(oldCallbacks, workspaceItems, appWidgets);
 
             // Load all the remaining pages (if we are loading synchronously, we want to defer this
             // work until after the first render)
@@ -1498,6 +1622,7 @@ public class LauncherModel extends BroadcastReceiver
                     }
 
                     // If we're profiling, ensure this is the last thing in the queue.
+                    LauncherTrace.recordPhase(LauncherTrace.PHASE_BIND_WORKSPACE, t);
                     if (DEBUG_LOADERS) {
                         Log.d(TAG, "bound workspace in "
                             + (SystemClock.uptimeMillis()-t) + "ms");
@@ -1520,7 +1645,12 @@ public class LauncherModel extends BroadcastReceiver
                 Log.d(TAG, "loadAndBindAllApps mAllAppsLoaded=" + mAllAppsLoaded);
             }
             if (!mAllAppsLoaded) {
-                loadAllApps();
+                final long loadStart = LauncherTrace.beginPhase(LauncherTrace.PHASE_LOAD_ALL_APPS);
+                try {
+                    loadAllApps();
+                } finally {
+                    LauncherTrace.endPhase(LauncherTrace.PHASE_LOAD_ALL_APPS, loadStart);
+                }
                 synchronized (LoaderTask.this) {
                     if (mStopped) {
                         return;
@@ -1548,7 +1678,10 @@ public class LauncherModel extends BroadcastReceiver
                 public void run() {
                     final Callbacks callbacks = tryGetCallbacks(oldCallbacks);
                     if (callbacks != null) {
+                        final long bindStart =
+                                LauncherTrace.beginPhase(LauncherTrace.PHASE_BIND_ALL_APPS);
                         callbacks.bindAllApplications(list);
+                        LauncherTrace.endPhase(LauncherTrace.PHASE_BIND_ALL_APPS, bindStart);
                     }
                     if (DEBUG_LOADERS) {
                         final long t = SystemClock.uptimeMillis();
@@ -1575,40 +1708,120 @@ public class LauncherModel extends BroadcastReceiver
                 return;
             }
 
+            final Context context = mContext;
             final List<UserHandleCompat> profiles = mUserManager.getUserProfiles();
+            final DeviceProfile grid = LauncherAppState.getInstance().getDynamicGrid()
+                    .getDeviceProfile();
+            final int pageSize = Math.max(1, grid.allAppsNumCols * grid.allAppsNumRows);
+            long queryDuration = 0;
+            long sortDuration = 0;
+            long iconDuration = 0;
+            boolean firstPageBound = false;
 
             // Clear the list of apps
             mBgAllAppsList.clear();
-            for (UserHandleCompat user : profiles) {
+            for (final UserHandleCompat user : profiles) {
                 // Query for the set of apps
                 final long qiaTime = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
                 List<LauncherActivityInfoCompat> apps = mLauncherApps.getActivityList(null, user);
                 if (DEBUG_LOADERS) {
+                    queryDuration += SystemClock.uptimeMillis() - qiaTime;
                     Log.d(TAG, "getActivityList took "
                             + (SystemClock.uptimeMillis()-qiaTime) + "ms for user " + user);
                     Log.d(TAG, "getActivityList got " + apps.size() + " apps for user " + user);
                 }
                 // Fail if we don't have any apps
-                if ((apps == null || apps.isEmpty()) && user.equals(UserHandleCompat.myUserHandle())) {
-                    return;
+                if (apps == null || apps.isEmpty()) {
+                    if (user.equals(UserHandleCompat.myUserHandle())) {
+                        return;
+                    }
+                    continue;
                 }
-                // Sort the applications by name
+
+                // Sort the applications by name, resolving the labels in parallel first
                 final long sortTime = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
+                resolveLabels(apps);
                 Collections.sort(apps,
                         new LauncherModel.ShortcutNameComparator(mLabelCache));
                 if (DEBUG_LOADERS) {
+                    sortDuration += SystemClock.uptimeMillis() - sortTime;
                     Log.d(TAG, "sort took "
                             + (SystemClock.uptimeMillis()-sortTime) + "ms");
                 }
 
-                // Create the ApplicationInfos
-                for (int i = 0; i < apps.size(); i++) {
-                    LauncherActivityInfoCompat app = apps.get(i);
-                    // This builds the icon bitmaps.
-                    mBgAllAppsList.add(new AppInfo(mContext, app, user, mIconCache, mLabelCache));
+                // Create the ApplicationInfos on the loader pool, and hand them out in
+                // alphabetical pages as soon as a page worth of them is ready.
+                final long iconTime = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
+                final ArrayList<Future<AppInfo>> pending = new ArrayList<>(apps.size());
+                for (final LauncherActivityInfoCompat app : apps) {
+                    pending.add(sLoaderPool.submit(new Callable<AppInfo>() {
+                        @Override
+                        public AppInfo call() {
+                            // This builds the icon bitmaps, and the sort key of the title
+                            AppInfo info = new AppInfo(context, app, user, mIconCache,
+                                    mLabelCache);
+                            info.getTitleKey(AppNameComparator.getCollator());
+                            return info;
+                        }
+                    }));
+                }
+                for (Future<AppInfo> f : pending) {
+                    if (mStopped) {
+                        for (Future<AppInfo> condemned : pending) {
+                            condemned.cancel(false);
+                        }
+                        return;
+                    }
+                    mBgAllAppsList.add(getLoaderResult(f));
+                    if (mBgAllAppsList.added.size() >= pageSize) {
+                        bindAllAppsPage(oldCallbacks, !firstPageBound);
+                        firstPageBound = true;
+                    }
+                }
+                if (DEBUG_LOADERS) {
+                    iconDuration += SystemClock.uptimeMillis() - iconTime;
                 }
             }
-            // Huh? Shouldn't this be inside the Runnable below?
+            if (!firstPageBound || !mBgAllAppsList.added.isEmpty()) {
+                bindAllAppsPage(oldCallbacks, !firstPageBound);
+            }
+
+            if (DEBUG_LOADERS) {
+                Log.d(TAG, "Icons processed in "
+                        + (SystemClock.uptimeMillis() - loadTime) + "ms (query: " + queryDuration
+                        + "ms, sort: " + sortDuration + "ms, icons: " + iconDuration + "ms)");
+            }
+        }
+
+        /**
+         * Resolves the labels of the apps which aren't in the label cache yet on the loader pool,
+         * so that sorting doesn't have to load them one by one.
+         */
+        private void resolveLabels(List<LauncherActivityInfoCompat> apps) {
+            final ArrayList<ComponentName> keys = new ArrayList<>();
+            final ArrayList<Future<CharSequence>> labels = new ArrayList<>();
+            for (final LauncherActivityInfoCompat app : apps) {
+                ComponentName key = app.getComponentName();
+                if (!mLabelCache.containsKey(key)) {
+                    keys.add(key);
+                    labels.add(sLoaderPool.submit(new Callable<CharSequence>() {
+                        @Override
+                        public CharSequence call() {
+                            return app.getLabel().toString().trim();
+                        }
+                    }));
+                }
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                mLabelCache.put(keys.get(i), getLoaderResult(labels.get(i)));
+            }
+        }
+
+        /**
+         * Posts the apps added since the last page to the main thread. The first page replaces
+         * the contents of all apps, later ones are added to it.
+         */
+        private void bindAllAppsPage(final Callbacks oldCallbacks, final boolean firstPage) {
             final ArrayList<AppInfo> added = mBgAllAppsList.added;
             mBgAllAppsList.added = new ArrayList<AppInfo>();
 
@@ -1617,8 +1830,14 @@ public class LauncherModel extends BroadcastReceiver
                 public void run() {
                     final Callbacks callbacks = tryGetCallbacks(oldCallbacks);
                     if (callbacks != null) {
-                        callbacks.bindAllApplications(added);
-                        final long bindTime = SystemClock.uptimeMillis();
+                        final long bindTime =
+                                LauncherTrace.beginPhase(LauncherTrace.PHASE_BIND_ALL_APPS);
+                        if (firstPage) {
+                            callbacks.bindAllApplications(added);
+                        } else {
+                            callbacks.bindAllApplicationsPage(added);
+                        }
+                        LauncherTrace.endPhase(LauncherTrace.PHASE_BIND_ALL_APPS, bindTime);
                         if (DEBUG_LOADERS) {
                             Log.d(TAG, "bound " + added.size() + " apps in "
                                 + (SystemClock.uptimeMillis() - bindTime) + "ms");
@@ -1628,11 +1847,6 @@ public class LauncherModel extends BroadcastReceiver
                     }
                 }
             });
-
-            if (DEBUG_LOADERS) {
-                Log.d(TAG, "Icons processed in "
-                        + (SystemClock.uptimeMillis() - loadTime) + "ms");
-            }
         }
 
         public void dumpState() {
@@ -1647,39 +1861,228 @@ public class LauncherModel extends BroadcastReceiver
     }
 
 
+    /**
+     * Brings back the icons trimmed from the icon cache while the launcher was in the background,
+     * on the loader pool rather than on the UI thread when they are bound.
+     */
+    public void reloadTrimmedIcons() {
+        sLoaderPool.execute(new Runnable() {
+            public void run() {
+                mIconCache.reloadTrimmedEntries();
+            }
+        });
+    }
+
+    /**
+     * Re-renders the icons for the current icon theme in the background, see
+     * {@link IconThemeUpdateTask}. The icons shown keep the previous theme until they are rebound.
+     */
     public void rebindItemsOnIconThemeChange() {
-        if (mCallbacks.get() != null) {
-            Runnable r = new Runnable() {
-                @Override
+        sWorkspaceSnapshotStale = true;
+        runOnWorkerThread(new IconThemeUpdateTask(mIconThemeGeneration.incrementAndGet()));
+    }
+
+    /**
+     * Renders the icons again for a new icon theme, and rebinds them progressively: first the
+     * workspace, which is on screen, then the current all apps page, then the other apps in
+     * batches. The icons of each step are rendered in parallel on the loader pool, and each step
+     * runs as a runnable of its own on the worker thread so that other model updates aren't held
+     * up behind the whole theme. A newer theme change abandons the update. Without a bound
+     * launcher, the icons are still rendered again and the stale entries dropped, only not bound.
+     * IconCache hands out the icons of the previous theme until they are rendered again, so a
+     * launcher bound in the meantime gets an update of its own once this one is done.
+     */
+    private class IconThemeUpdateTask implements Runnable {
+        private final int mGeneration;
+        private final Callbacks mOldCallbacks;
+
+        IconThemeUpdateTask(int generation) {
+            mGeneration = generation;
+            mOldCallbacks = getCallback();
+        }
+
+        private boolean isSuperseded() {
+            return mGeneration != mIconThemeGeneration.get();
+        }
+
+        /**
+         * Returns the callbacks if they are still the ones the update started with.
+         */
+        private Callbacks getCurrentCallbacks() {
+            Callbacks callbacks = getCallback();
+            return callbacks == mOldCallbacks && !isSuperseded() ? callbacks : null;
+        }
+
+        public void run() {
+            if (isSuperseded()) {
+                return;
+            }
+            mIconCache.loadIconPackDrawables();
+
+            final ArrayList<ShortcutInfo> shortcuts = new ArrayList<ShortcutInfo>();
+            synchronized (sBgLock) {
+                for (ItemInfo info : sBgWorkspaceItems) {
+                    if (info instanceof ShortcutInfo && ((ShortcutInfo) info).intent != null) {
+                        shortcuts.add((ShortcutInfo) info);
+                    }
+                }
+            }
+            refreshIcons(shortcuts);
+
+            if (mOldCallbacks == null) {
+                // Nothing is bound, but the cache still has to be re-rendered for the new theme
+                updateApps(new ArrayList<AppInfo>());
+                return;
+            }
+            runOnMainThread(new Runnable() {
                 public void run() {
-                    ArrayList<ShortcutInfo> updateShortcuts = new ArrayList<>();
-                    for (ItemInfo info : sBgWorkspaceItems) {
-                        if (info instanceof ShortcutInfo) {
-                            ShortcutInfo si = (ShortcutInfo) info;
-                            updateShortcuts.add(si);
-                            // cache the new icon
-                            si.getIcon(mIconCache);
+                    Callbacks callbacks = getCurrentCallbacks();
+                    if (callbacks == null) {
+                        if (!isSuperseded()) {
+                            runOnWorkerThread(new Runnable() {
+                                public void run() {
+                                    updateApps(new ArrayList<AppInfo>());
+                                }
+                            });
                         }
+                        return;
                     }
-                    mCallbacks.get().bindShortcutsChanged(updateShortcuts, null, UserHandleCompat.myUserHandle());
-                    ArrayList<AppInfo> allApps = getAllApps();
-                    for (AppInfo info : allApps) {
-                        // cache the new icon
-                        mIconCache.getIcon(info.intent, UserHandleCompat.myUserHandle());
+                    if (!shortcuts.isEmpty()) {
+                        callbacks.bindShortcutsChanged(shortcuts, null,
+                                UserHandleCompat.myUserHandle());
                     }
-                    //  TODO post this on main thread
-                    mCallbacks.get().bindAppsUpdated(allApps);
+                    final ArrayList<AppInfo> firstApps = callbacks.getAllAppsOnCurrentPage();
+                    runOnWorkerThread(new Runnable() {
+                        public void run() {
+                            updateApps(firstApps);
+                        }
+                    });
                 }
+            });
+        }
 
-            };
-            runOnWorkerThread(r);
+        private void updateApps(ArrayList<AppInfo> firstApps) {
+            if (isSuperseded()) {
+                return;
+            }
+            // The other apps follow in batches, once the current page is done
+            HashSet<AppInfo> first = new HashSet<AppInfo>(firstApps);
+            ArrayList<AppInfo> otherApps = new ArrayList<AppInfo>();
+            for (AppInfo info : mBgAllAppsList.data) {
+                if (!first.contains(info)) {
+                    otherApps.add(info);
+                }
+            }
+            updateAppsBatch(firstApps);
+            postNextBatch(otherApps, 0);
+        }
+
+        private void postNextBatch(final ArrayList<AppInfo> apps, final int start) {
+            runOnWorkerThread(new Runnable() {
+                public void run() {
+                    if (isSuperseded()) {
+                        return;
+                    }
+                    if (start >= apps.size()) {
+                        // Whatever wasn't re-rendered, like the icons of uninstalled apps, is
+                        // rendered again when it is next needed
+                        mIconCache.removeStaleEntries();
+                        sWorkspaceSnapshotStale = true;
+                        Callbacks callbacks = getCallback();
+                        if (callbacks != null && callbacks != mOldCallbacks) {
+                            // The icons rendered by now are reused, only the binds are redone
+                            runOnWorkerThread(new IconThemeUpdateTask(
+                                    mIconThemeGeneration.incrementAndGet()));
+                        }
+                        return;
+                    }
+                    int end = Math.min(start + ICON_THEME_BATCH_SIZE, apps.size());
+                    updateAppsBatch(new ArrayList<AppInfo>(apps.subList(start, end)));
+                    postNextBatch(apps, end);
+                }
+            });
+        }
+
+        private void updateAppsBatch(final ArrayList<AppInfo> apps) {
+            // Leave out the apps removed since the batch was made, which would otherwise be
+            // bound again. Apps are only removed on this thread, and their removal is bound after
+            // this update.
+            apps.retainAll(new HashSet<AppInfo>(mBgAllAppsList.data));
+            if (apps.isEmpty()) {
+                return;
+            }
+            refreshIcons(apps);
+            if (mOldCallbacks == null) {
+                return;
+            }
+            runOnMainThread(new Runnable() {
+                public void run() {
+                    Callbacks callbacks = getCurrentCallbacks();
+                    if (callbacks != null) {
+                        callbacks.bindAppsUpdated(apps);
+                    }
+                }
+            });
+        }
+
+        private void refreshIcons(ArrayList<? extends ItemInfo> items) {
+            final ArrayList<Future<?>> pending = new ArrayList<Future<?>>(items.size());
+            for (ItemInfo item : items) {
+                final Intent intent = item instanceof ShortcutInfo
+                        ? ((ShortcutInfo) item).intent : ((AppInfo) item).intent;
+                final UserHandleCompat user = item.user;
+                pending.add(sLoaderPool.submit(new Runnable() {
+                    public void run() {
+                        mIconCache.refreshIcon(intent, user);
+                    }
+                }));
+            }
+            for (Future<?> f : pending) {
+                getLoaderResult(f);
+            }
         }
     }
 
+    /**
+     * Queues the package events, which are applied once no new ones came in for
+     * {@link #PACKAGE_EVENTS_DELAY} ms, so that a burst of events ends in a single update of the
+     * model and a single bind per user.
+     */
     void enqueuePackageUpdated(PackageUpdatedTask task) {
-        sWorker.post(task);
+        final long now = SystemClock.uptimeMillis();
+        synchronized (mPendingPackageUpdates) {
+            PackageUpdatedTask pending = mPendingPackageUpdates.get(task.mUser);
+            if (pending == null) {
+                mPendingPackageUpdates.put(task.mUser, task);
+            } else {
+                for (Entry<String, Integer> entry : task.mPackageOps.entrySet()) {
+                    pending.addPackages(entry.getValue(), new String[] { entry.getKey() });
+                }
+            }
+            if (mFirstPendingPackageEventTime == 0) {
+                mFirstPendingPackageEventTime = now;
+            }
+            sWorker.removeCallbacks(mApplyPackageUpdates);
+            sWorker.postAtTime(mApplyPackageUpdates, Math.min(now + PACKAGE_EVENTS_DELAY,
+                    mFirstPendingPackageEventTime + PACKAGE_EVENTS_MAX_DELAY));
+        }
     }
 
+    private final Runnable mApplyPackageUpdates = new Runnable() {
+        @Override
+        public void run() {
+            ArrayList<PackageUpdatedTask> tasks;
+            synchronized (mPendingPackageUpdates) {
+                tasks = new ArrayList<PackageUpdatedTask>(mPendingPackageUpdates.values());
+                mPendingPackageUpdates.clear();
+                mFirstPendingPackageEventTime = 0;
+            }
+            for (PackageUpdatedTask task : tasks) {
+                task.run();
+            }
+        }
+    };
+
     private class AppsAvailabilityCheck extends BroadcastReceiver {
 
         @Override
@@ -1721,10 +2124,14 @@ public class LauncherModel extends BroadcastReceiver
         }
     }
 
+    /**
+     * Applies the package events of a user to the model, and binds the outcome in one go. Events
+     * enqueued while the task is pending are merged into it, with a single op per package.
+     */
     private class PackageUpdatedTask implements Runnable {
-        int mOp;
-        String[] mPackages;
-        UserHandleCompat mUser;
+        final UserHandleCompat mUser;
+        // The op to apply to each package, in the order in which the packages were first seen
+        final LinkedHashMap<String, Integer> mPackageOps = new LinkedHashMap<String, Integer>();
 
         public static final int OP_NONE = 0;
         public static final int OP_ADD = 1;
@@ -1734,62 +2141,89 @@ public class LauncherModel extends BroadcastReceiver
 
 
         public PackageUpdatedTask(int op, String[] packages, UserHandleCompat user) {
-            mOp = op;
-            mPackages = packages;
             mUser = user;
+            addPackages(op, packages);
         }
 
-        public void run() {
-            final Context context = mApp.getContext();
-
-            final String[] packages = mPackages;
-            switch (mOp) {
-                case OP_ADD:
-                    for (String aPackage : packages) {
-                        if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.addPackage " + aPackage);
-                        mBgAllAppsList.addPackage(context, aPackage, mUser);
+        /**
+         * Merges an op on the packages with the ops already pending for them.
+         */
+        void addPackages(int op, String[] packages) {
+            for (String aPackage : packages) {
+                Integer pending = mPackageOps.get(aPackage);
+                int merged = op;
+                if (pending != null) {
+                    if (pending == OP_ADD && op == OP_UPDATE) {
+                        // Adding the package picks up the update as well
+                        merged = OP_ADD;
+                    } else if ((pending == OP_REMOVE || pending == OP_UNAVAILABLE)
+                            && op == OP_ADD) {
+                        // Reinstalled or remounted, which is an update of what the model has
+                        merged = OP_UPDATE;
                     }
+                }
+                mPackageOps.put(aPackage, merged);
+            }
+        }
 
-                    break;
-                case OP_UPDATE:
-                    for (String aPackage : packages) {
-                        if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.updatePackage " + aPackage);
-                        mBgAllAppsList.updatePackage(context, aPackage, mUser);
-                        WidgetPreviewLoader.removePackageFromDb(
-                                mApp.getWidgetPreviewCacheDb(), aPackage);
-                    }
-                    break;
-                case OP_REMOVE:
-                    // Remove the packageName for the set of auto-installed shortcuts. This
-                    // will ensure that the shortcut when the app is installed again.
-                    // Fall through
-                case OP_UNAVAILABLE:
-                    boolean clearCache = mOp == OP_REMOVE;
-                    for (String aPackage : packages) {
-                        if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.removePackage " + aPackage);
-                        mBgAllAppsList.removePackage(aPackage, mUser, clearCache);
-                        WidgetPreviewLoader.removePackageFromDb(
-                                mApp.getWidgetPreviewCacheDb(), aPackage);
-                    }
-                    break;
+        private HashSet<String> getPackages(int op) {
+            HashSet<String> packages = new HashSet<String>();
+            for (Entry<String, Integer> entry : mPackageOps.entrySet()) {
+                if (entry.getValue() == op) {
+                    packages.add(entry.getKey());
+                }
             }
+            return packages;
+        }
 
-            ArrayList<AppInfo> added = null;
-            ArrayList<AppInfo> modified = null;
+        public void run() {
+            final Context context = mApp.getContext();
+            sWorkspaceSnapshotStale = true;
+
+            final HashSet<String> addedPackages = getPackages(OP_ADD);
+            final HashSet<String> updatedPackages = getPackages(OP_UPDATE);
+            final HashSet<String> uninstalledPackages = getPackages(OP_REMOVE);
+            final HashSet<String> unavailablePackages = getPackages(OP_UNAVAILABLE);
+
+            for (String aPackage : addedPackages) {
+                if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.addPackage " + aPackage);
+                mBgAllAppsList.addPackage(context, aPackage, mUser);
+            }
+            for (String aPackage : updatedPackages) {
+                if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.updatePackage " + aPackage);
+                mIconCache.removeIconsFromDb(aPackage, mUser);
+                mBgAllAppsList.updatePackage(context, aPackage, mUser);
+                WidgetPreviewLoader.removePackageFromDb(
+                        mApp.getWidgetPreviewCacheDb(), aPackage);
+            }
+            for (String aPackage : uninstalledPackages) {
+                if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.removePackage " + aPackage);
+                mIconCache.removeIconsFromDb(aPackage, mUser);
+                mBgAllAppsList.removePackage(aPackage, mUser, true);
+                WidgetPreviewLoader.removePackageFromDb(
+                        mApp.getWidgetPreviewCacheDb(), aPackage);
+            }
+            for (String aPackage : unavailablePackages) {
+                if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.removePackage " + aPackage);
+                mBgAllAppsList.removePackage(aPackage, mUser, false);
+                WidgetPreviewLoader.removePackageFromDb(
+                        mApp.getWidgetPreviewCacheDb(), aPackage);
+            }
+
+            final ArrayList<AppInfo> added = new ArrayList<AppInfo>(mBgAllAppsList.added);
+            mBgAllAppsList.added.clear();
+            final ArrayList<AppInfo> modified = new ArrayList<AppInfo>(mBgAllAppsList.modified);
+            mBgAllAppsList.modified.clear();
             final ArrayList<AppInfo> removedApps = new ArrayList<AppInfo>();
-
-            if (mBgAllAppsList.added.size() > 0) {
-                added = new ArrayList<AppInfo>(mBgAllAppsList.added);
-                mBgAllAppsList.added.clear();
-            }
-            if (mBgAllAppsList.modified.size() > 0) {
-                modified = new ArrayList<AppInfo>(mBgAllAppsList.modified);
-                mBgAllAppsList.modified.clear();
-            }
-            if (mBgAllAppsList.removed.size() > 0) {
-                removedApps.addAll(mBgAllAppsList.removed);
-                mBgAllAppsList.removed.clear();
+            final ArrayList<AppInfo> unavailableApps = new ArrayList<AppInfo>();
+            for (AppInfo ai : mBgAllAppsList.removed) {
+                if (unavailablePackages.contains(ai.componentName.getPackageName())) {
+                    unavailableApps.add(ai);
+                } else {
+                    removedApps.add(ai);
+                }
             }
+            mBgAllAppsList.removed.clear();
 
             final Callbacks callbacks = getCallback();
             if (callbacks == null) {
@@ -1798,40 +2232,25 @@ public class LauncherModel extends BroadcastReceiver
             }
 
             final ArrayMap<ComponentName, AppInfo> addedOrUpdatedApps = new ArrayMap<>();
-
-            if (added != null) {
-                // Ensure that we add all the workspace applications to the db
-                addAppsToAllApps(context, added);
-                for (AppInfo ai : added) {
-                    addedOrUpdatedApps.put(ai.componentName, ai);
-                }
+            for (AppInfo ai : added) {
+                addedOrUpdatedApps.put(ai.componentName, ai);
             }
-
-            if (modified != null) {
-                final ArrayList<AppInfo> modifiedFinal = modified;
-                for (AppInfo ai : modified) {
-                    addedOrUpdatedApps.put(ai.componentName, ai);
-                }
-
-                mHandler.post(new Runnable() {
-                    public void run() {
-                        Callbacks cb = getCallback();
-                        if (callbacks == cb) {
-                            callbacks.bindAppsUpdated(modifiedFinal);
-                        }
-                    }
-                });
+            for (AppInfo ai : modified) {
+                addedOrUpdatedApps.put(ai.componentName, ai);
             }
 
             // Update shortcut infos
-            if (mOp == OP_ADD || mOp == OP_UPDATE) {
-                final ArrayList<ShortcutInfo> updatedShortcuts = new ArrayList<ShortcutInfo>();
-                final ArrayList<ShortcutInfo> removedShortcuts = new ArrayList<ShortcutInfo>();
-                final ArrayList<LauncherAppWidgetInfo> widgets = new ArrayList<LauncherAppWidgetInfo>();
-
-                HashSet<String> packageSet = new HashSet<String>(Arrays.asList(packages));
+            final ArrayList<ShortcutInfo> updatedShortcuts = new ArrayList<ShortcutInfo>();
+            final ArrayList<LauncherAppWidgetInfo> widgets = new ArrayList<LauncherAppWidgetInfo>();
+            HashSet<String> packageSet = new HashSet<String>(addedPackages);
+            packageSet.addAll(updatedPackages);
+            if (!packageSet.isEmpty()) {
                 synchronized (sBgLock) {
-                    for (ItemInfo info : sBgItemsIdMap.values()) {
+                    ArrayList<ItemInfo> packageItems = new ArrayList<ItemInfo>();
+                    for (String aPackage : packageSet) {
+                        packageItems.addAll(sBgItemsIndex.getItemsForPackage(aPackage));
+                    }
+                    for (ItemInfo info : packageItems) {
                         if (info instanceof ShortcutInfo && mUser.equals(info.user)) {
                             ShortcutInfo si = (ShortcutInfo) info;
                             boolean infoUpdated = false;
@@ -1874,85 +2293,62 @@ public class LauncherModel extends BroadcastReceiver
                         }
                     }
                 }
-
-                if (!updatedShortcuts.isEmpty() || !removedShortcuts.isEmpty()) {
-                    mHandler.post(new Runnable() {
-
-                        public void run() {
-                            Callbacks cb = getCallback();
-                            if (callbacks == cb) {
-                                callbacks.bindShortcutsChanged(
-                                        updatedShortcuts, removedShortcuts, mUser);
-                            }
-                        }
-                    });
-                    if (!removedShortcuts.isEmpty()) {
-                        deleteItemsFromDatabase(context, removedShortcuts);
-                    }
-                }
-                if (!widgets.isEmpty()) {
-                    mHandler.post(new Runnable() {
-                        public void run() {
-                            Callbacks cb = getCallback();
-                            if (callbacks == cb) {
-                                callbacks.bindWidgetsRestored(widgets);
-                            }
-                        }
-                    });
-                }
             }
 
-            final ArrayList<String> removedPackageNames =
-                    new ArrayList<String>();
-            if (mOp == OP_REMOVE || mOp == OP_UNAVAILABLE) {
-                // Mark all packages in the broadcast to be removed
-                removedPackageNames.addAll(Arrays.asList(packages));
-            } else if (mOp == OP_UPDATE) {
-                // Mark disabled packages in the broadcast to be removed
-                for (String aPackage : packages) {
-                    if (isPackageDisabled(context, aPackage, mUser)) {
-                        removedPackageNames.add(aPackage);
-                    }
+            // Uninstalled packages, and updated packages which are now disabled, are removed.
+            // Unavailable packages only have their shortcuts disabled.
+            final ArrayList<String> removedPackageNames = new ArrayList<String>(uninstalledPackages);
+            for (String aPackage : updatedPackages) {
+                if (isPackageDisabled(context, aPackage, mUser)) {
+                    removedPackageNames.add(aPackage);
                 }
             }
+            final ArrayList<String> unavailablePackageNames =
+                    new ArrayList<String>(unavailablePackages);
 
             if (!removedPackageNames.isEmpty() || !removedApps.isEmpty()) {
-                final int removeReason;
-                if (mOp == OP_UNAVAILABLE) {
-                    removeReason = ShortcutInfo.FLAG_DISABLED_NOT_AVAILABLE;
-                } else {
-                    // Remove all the components associated with this package
-                    for (String pn : removedPackageNames) {
-                        deletePackageFromDatabase(context, pn, mUser);
-                    }
-                    // Remove all the specific components
-                    for (AppInfo a : removedApps) {
-                        ArrayList<ItemInfo> infos = getItemInfoForComponentName(a.componentName, mUser);
-                        deleteItemsFromDatabase(context, infos);
-                    }
-                    removeReason = 0;
+                // Remove all the components associated with this package
+                for (String pn : removedPackageNames) {
+                    deletePackageFromDatabase(context, pn, mUser);
+                }
+                // Remove all the specific components
+                for (AppInfo a : removedApps) {
+                    ArrayList<ItemInfo> infos = getItemInfoForComponentName(a.componentName, mUser);
+                    deleteItemsFromDatabase(context, infos);
                 }
-
-                // Call the components-removed callback
-                mHandler.post(new Runnable() {
-                    public void run() {
-                        Callbacks cb = getCallback();
-                        if (callbacks == cb) {
-                            callbacks.bindComponentsRemoved(
-                                    removedPackageNames, removedApps, mUser, removeReason);
-                        }
-                    }
-                });
             }
 
-            final ArrayList<Object> widgets = getSortedWidgets(context);
+            final ArrayList<Object> allWidgets = getSortedWidgets(context);
+
+            // Bind the whole outcome at once
             mHandler.post(new Runnable() {
                 @Override
                 public void run() {
                     Callbacks cb = getCallback();
-                    if (callbacks == cb) {
-                        callbacks.bindPackagesUpdated(widgets);
+                    if (callbacks != cb) {
+                        return;
+                    }
+                    if (!added.isEmpty()) {
+                        callbacks.bindAppsAdded(0, null, null, added);
+                    }
+                    if (!modified.isEmpty()) {
+                        callbacks.bindAppsUpdated(modified);
+                    }
+                    if (!updatedShortcuts.isEmpty()) {
+                        callbacks.bindShortcutsChanged(updatedShortcuts,
+                                new ArrayList<ShortcutInfo>(), mUser);
+                    }
+                    if (!widgets.isEmpty()) {
+                        callbacks.bindWidgetsRestored(widgets);
                     }
+                    if (!removedPackageNames.isEmpty() || !removedApps.isEmpty()) {
+                        callbacks.bindComponentsRemoved(removedPackageNames, removedApps, mUser, 0);
+                    }
+                    if (!unavailablePackageNames.isEmpty() || !unavailableApps.isEmpty()) {
+                        callbacks.bindComponentsRemoved(unavailablePackageNames, unavailableApps,
+                                mUser, ShortcutInfo.FLAG_DISABLED_NOT_AVAILABLE);
+                    }
+                    callbacks.bindPackagesUpdated(allWidgets);
                 }
             });
         }
@@ -2083,17 +2479,9 @@ public class LauncherModel extends BroadcastReceiver
 
     private ArrayList<ItemInfo> getItemInfoForComponentName(final ComponentName cname,
             final UserHandleCompat user) {
-        ItemInfoFilter filter  = new ItemInfoFilter() {
-            @Override
-            public boolean filterItem(ItemInfo parent, ItemInfo info, ComponentName cn) {
-                if (info.user == null) {
-                    return cn.equals(cname);
-                } else {
-                    return cn.equals(cname) && info.user.equals(user);
-                }
-            }
-        };
-        return filterItemInfos(sBgItemsIdMap.values(), filter);
+        synchronized (sBgLock) {
+            return sBgItemsIndex.getItemsForComponent(cname, user);
+        }
     }
 
     /**
@@ -2152,29 +2540,18 @@ public class LauncherModel extends BroadcastReceiver
         return info;
     }
 
+    /**
+     * Returns the comparator of apps by title, which compares the cached collation keys of the
+     * titles.
+     */
     public static Comparator<AppInfo> getAppNameComparator() {
-        final Collator collator = Collator.getInstance();
-        return new Comparator<AppInfo>() {
-            public final int compare(AppInfo a, AppInfo b) {
-                if (a.user.equals(b.user)) {
-                    int result = collator.compare(a.title.toString().trim(),
-                            b.title.toString().trim());
-                    if (result == 0) {
-                        result = a.componentName.compareTo(b.componentName);
-                    }
-                    return result;
-                } else {
-                    // TODO Need to figure out rules for sorting
-                    // profiles, this puts work second.
-                    return a.user.toString().compareTo(b.user.toString());
-                }
-            }
-        };
+        return AppNameComparator.INSTANCE;
     }
 
     public static class ShortcutNameComparator implements Comparator<LauncherActivityInfoCompat> {
-        private Collator mCollator;
-        private ArrayMap<Object, CharSequence> mLabelCache;
+        private final Collator mCollator;
+        private final ArrayMap<Object, CharSequence> mLabelCache;
+        private final HashMap<ComponentName, CollationKey> mKeys = new HashMap<>();
         ShortcutNameComparator(PackageManager pm) {
             mLabelCache = new ArrayMap<>();
             mCollator = Collator.getInstance();
@@ -2183,25 +2560,24 @@ public class LauncherModel extends BroadcastReceiver
             mLabelCache = labelCache;
             mCollator = Collator.getInstance();
         }
-        public final int compare(LauncherActivityInfoCompat a, LauncherActivityInfoCompat b) {
-            String labelA, labelB;
-            ComponentName keyA = a.getComponentName();
-            ComponentName keyB = b.getComponentName();
-            if (mLabelCache.containsKey(keyA)) {
-                labelA = mLabelCache.get(keyA).toString();
-            } else {
-                labelA = a.getLabel().toString().trim();
-
-                mLabelCache.put(keyA, labelA);
-            }
-            if (mLabelCache.containsKey(keyB)) {
-                labelB = mLabelCache.get(keyB).toString();
-            } else {
-                labelB = b.getLabel().toString().trim();
-
-                mLabelCache.put(keyB, labelB);
+        private CollationKey getKey(LauncherActivityInfoCompat info) {
+            ComponentName cn = info.getComponentName();
+            CollationKey key = mKeys.get(cn);
+            if (key == null) {
+                String label;
+                if (mLabelCache.containsKey(cn)) {
+                    label = mLabelCache.get(cn).toString();
+                } else {
+                    label = info.getLabel().toString().trim();
+                    mLabelCache.put(cn, label);
+                }
+                key = mCollator.getCollationKey(label);
+                mKeys.put(cn, key);
             }
-            return mCollator.compare(labelA, labelB);
+            return key;
+        }
+        public final int compare(LauncherActivityInfoCompat a, LauncherActivityInfoCompat b) {
+            return getKey(a).compareTo(getKey(b));
         }
     }
 
@@ -2244,6 +2620,17 @@ public class LauncherModel extends BroadcastReceiver
                 && (provider.provider.getPackageName() != null);
     }
 
+    private static <T> T getLoaderResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public Callbacks getCallback() {
         return mCallbacks != null ? mCallbacks.get() : null;
     }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.support.v4.util.ArrayMap;
+
+import java.io.PrintWriter;
+
+/**
+ * Instrumentation of the loading and binding phases. Phases show up as sections in systrace, and
+ * their durations are kept in a ring buffer, apart from the ring buffer of the dump logs so that
+ * frequent logs don't push them out. Both are printed with the counters by {@link Launcher#dump}.
+ */
+final class LauncherTrace {
+    static final String PHASE_LOAD_WORKSPACE = "loadWorkspace";
+    static final String PHASE_BIND_WORKSPACE = "bindWorkspace";
+    static final String PHASE_LOAD_ALL_APPS = "loadAllApps";
+    static final String PHASE_BIND_ALL_APPS = "bindAllApplications";
+
+    static final String SECTION_READ_WIDGET_PREVIEW = "readWidgetPreview";
+    static final String SECTION_BIND_FRAME = "bindFrame";
+
+    static final String COUNTER_ICON_CACHE_MISSES = "iconCacheMisses";
+    static final String COUNTER_WIDGET_PREVIEW_DB_HITS = "widgetPreviewDbHits";
+    static final String COUNTER_WIDGET_PREVIEW_DB_MISSES = "widgetPreviewDbMisses";
+    static final String COUNTER_WIDGET_PREVIEW_DB_READ_MS = "widgetPreviewDbReadMs";
+    static final String COUNTER_WIDGET_PREVIEW_CACHE_HITS = "widgetPreviewCacheHits";
+    static final String COUNTER_WIDGET_PREVIEW_CACHE_MISSES = "widgetPreviewCacheMisses";
+    static final String COUNTER_WIDGET_PREVIEWS_GENERATED = "widgetPreviewsGenerated";
+    static final String COUNTER_WIDGET_PREVIEW_EVICTIONS = "widgetPreviewEvictions";
+    static final String COUNTER_ICONS_COMPACTED = "iconsCompacted";
+    static final String COUNTER_ICON_BYTES_SAVED = "iconBytesSaved";
+    static final String COUNTER_BIND_FRAMES = "bindFrames";
+    static final String COUNTER_BIND_FRAME_MS = "bindFrameMs";
+    static final String COUNTER_APP_ICONS_INFLATED = "appIconsInflated";
+    static final String COUNTER_APP_ICONS_REUSED = "appIconsReused";
+    static final String COUNTER_APP_ICONS_DROPPED = "appIconsDropped";
+
+    private static final boolean TRACE_ENABLED =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    private static final int MAX_PHASES = 64;
+    private static final int MAX_LOGS = 128;
+
+    /**
+     * Ring buffer of events, oldest first from mNext once it has wrapped around.
+     */
+    private static class EventRing {
+        private final long[] mTimes;
+        private final String[] mNames;
+        // Duration of the phase, or -1 for log events
+        private final long[] mDurations;
+        private int mNext;
+        private int mCount;
+
+        EventRing(int capacity) {
+            mTimes = new long[capacity];
+            mNames = new String[capacity];
+            mDurations = new long[capacity];
+        }
+
+        synchronized void add(long time, String name, long duration) {
+            mTimes[mNext] = time;
+            mNames[mNext] = name;
+            mDurations[mNext] = duration;
+            mNext = (mNext + 1) % mTimes.length;
+            mCount = Math.min(mCount + 1, mTimes.length);
+        }
+
+        synchronized void dump(String prefix, PrintWriter writer) {
+            final int capacity = mTimes.length;
+            int first = (mNext - mCount + capacity) % capacity;
+            for (int i = 0; i < mCount; i++) {
+                int event = (first + i) % capacity;
+                writer.print(prefix + mTimes[event] + " " + mNames[event]);
+                if (mDurations[event] >= 0) {
+                    writer.print(" " + mDurations[event] + "ms");
+                }
+                writer.println();
+            }
+        }
+    }
+
+    private static final EventRing sPhases = new EventRing(MAX_PHASES);
+    private static final EventRing sLogs = new EventRing(MAX_LOGS);
+
+    private static final ArrayMap<String, long[]> sCounters = new ArrayMap<String, long[]>();
+
+    private LauncherTrace() {
+    }
+
+    /**
+     * Starts a systrace section, which must be ended on the same thread.
+     */
+    static void beginSection(String name) {
+        if (TRACE_ENABLED) {
+            Trace.beginSection(name);
+        }
+    }
+
+    static void endSection() {
+        if (TRACE_ENABLED) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Starts a phase on the current thread.
+     * @return the start time to pass to {@link #endPhase}
+     */
+    static long beginPhase(String name) {
+        beginSection(name);
+        return SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Ends the phase last started on the current thread, and records its duration.
+     */
+    static void endPhase(String name, long startTime) {
+        endSection();
+        recordPhase(name, startTime);
+    }
+
+    /**
+     * Records the duration of a phase which wasn't traced as a section, because it started and
+     * ended on different threads.
+     */
+    static void recordPhase(String name, long startTime) {
+        final long now = SystemClock.uptimeMillis();
+        sPhases.add(now, name, now - startTime);
+    }
+
+    static void log(String tag, String message) {
+        sLogs.add(SystemClock.uptimeMillis(), tag + ": " + message, -1);
+    }
+
+    static void incrementCounter(String name) {
+        addToCounter(name, 1);
+    }
+
+    static void addToCounter(String name, long delta) {
+        synchronized (sCounters) {
+            long[] counter = sCounters.get(name);
+            if (counter == null) {
+                counter = new long[1];
+                sCounters.put(name, counter);
+            }
+            counter[0] += delta;
+        }
+    }
+
+    static void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Loader trace (uptime " + SystemClock.uptimeMillis() + "ms):");
+        sPhases.dump(prefix + "  ", writer);
+        writer.println(prefix + "Logs:");
+        sLogs.dump(prefix + "  ", writer);
+        writer.println(prefix + "Counters:");
+        synchronized (sCounters) {
+            for (int i = 0; i < sCounters.size(); i++) {
+                writer.println(prefix + "  " + sCounters.keyAt(i) + "=" + sCounters.valueAt(i)[0]);
+            }
+        }
+    }
+}
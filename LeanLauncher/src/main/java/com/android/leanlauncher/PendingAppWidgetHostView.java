@@ -44,6 +44,7 @@ public class PendingAppWidgetHostView extends LauncherAppWidgetHostView implemen
     private final boolean mDisabledForSafeMode;
 
     private Bitmap mIcon;
+    private int mIconColor;
 
     private Drawable mCenterDrawable;
     private Drawable mTopCornerDrawable;
@@ -102,11 +103,12 @@ public class PendingAppWidgetHostView extends LauncherAppWidgetHostView implemen
     }
 
     public void updateIcon(IconCache cache) {
-        Bitmap icon = cache.getIcon(mIconLookupIntent, mInfo.user);
-        if (mIcon == icon) {
+        IconCache.ColoredIcon icon = cache.getColoredIcon(mIconLookupIntent, mInfo.user);
+        if (mIcon == icon.icon) {
             return;
         }
-        mIcon = icon;
+        mIcon = icon.icon;
+        mIconColor = icon.dominantColor;
         if (mCenterDrawable != null) {
             mCenterDrawable.setCallback(null);
             mCenterDrawable = null;
@@ -131,7 +133,8 @@ public class PendingAppWidgetHostView extends LauncherAppWidgetHostView implemen
                 }
 
                 FastBitmapDrawable drawable = Utilities.createIconDrawable(mIcon);
-                mCenterDrawable = new PreloadIconDrawable(drawable, sPreloaderTheme);
+                mCenterDrawable = new PreloadIconDrawable(drawable, mIconColor,
+                        sPreloaderTheme);
                 mCenterDrawable.setCallback(this);
                 mTopCornerDrawable = null;
                 applyState();
@@ -52,6 +52,8 @@ class PreloadIconDrawable extends Drawable {
     private Drawable mBgDrawable;
     private int mRingOutset;
 
+    // The dominant color of the icon, found by the icon cache
+    private final int mIconColor;
     private int mIndicatorColor = 0;
 
     /**
@@ -63,8 +65,9 @@ class PreloadIconDrawable extends Drawable {
     private float mAnimationProgress = ANIMATION_PROGRESS_STOPPED;
     private ObjectAnimator mAnimator;
 
-    public PreloadIconDrawable(Drawable icon, Theme theme) {
+    public PreloadIconDrawable(Drawable icon, int iconColor, Theme theme) {
         mIcon = icon;
+        mIconColor = iconColor;
 
         mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mPaint.setStyle(Paint.Style.STROKE);
@@ -192,8 +195,8 @@ class PreloadIconDrawable extends Drawable {
         }
         mAnimationProgress = ANIMATION_PROGRESS_STOPPED;
         if (level > 0) {
-            // Set the paint color only when the level changes, so that the dominant color
-            // is only calculated when needed.
+            // Set the paint color only when the level changes, so that the indicator color
+            // is only derived from the icon color when needed.
             mPaint.setColor(getIndicatorColor());
         }
         if (mIcon instanceof FastBitmapDrawable) {
@@ -249,12 +252,9 @@ class PreloadIconDrawable extends Drawable {
             mIndicatorColor = DEFAULT_COLOR;
             return mIndicatorColor;
         }
-        mIndicatorColor = Utilities.findDominantColorByHue(
-                ((FastBitmapDrawable) mIcon).getBitmap(), 20);
-
         // Make sure that the dominant color has enough saturation to be visible properly.
         float[] hsv = new float[3];
-        Color.colorToHSV(mIndicatorColor, hsv);
+        Color.colorToHSV(mIconColor, hsv);
         if (hsv[1] < MIN_SATUNATION) {
             mIndicatorColor = DEFAULT_COLOR;
             return mIndicatorColor;
@@ -38,7 +38,7 @@ public class SearchAppsActivity extends Activity {
         setContentView(R.layout.search_apps);
 
         SearchAppsArrayAdapter adapter = new SearchAppsArrayAdapter(this,
-                LauncherAppState.getInstance().getModel().getAllApps());
+                LauncherAppState.getInstance().getModel().getAppSearchIndex());
 
         SearchAutoCompleteTextView searchBar = (SearchAutoCompleteTextView) findViewById(R.id.et_search_apps);
         searchBar.setSearchActivity(this);
@@ -35,7 +35,6 @@ import android.widget.Toast;
 import com.android.leanlauncher.compat.UserHandleCompat;
 
 import java.util.ArrayList;
-import java.util.TreeMap;
 
 
 public class SearchAppsArrayAdapter extends ArrayAdapter<AppInfo> {
@@ -49,30 +48,16 @@ public class SearchAppsArrayAdapter extends ArrayAdapter<AppInfo> {
         protected FilterResults performFiltering(CharSequence constraint) {
             FilterResults results = new FilterResults();
 
-            TreeMap<Integer, AppInfo> suggestions = new TreeMap<>();
             if (!TextUtils.isEmpty(constraint)) {
-                String constraintStr = constraint.toString().toLowerCase();
-
-                int startsWithRank = 0, containsRank = mApps.size();
-                for (AppInfo app : mApps) {
-                    String appTitle = app.title.toString().toLowerCase();
-                    if (!TextUtils.isEmpty(appTitle)) {
-                        if (appTitle.startsWith(constraintStr)) {
-                            startsWithRank++;
-                            suggestions.put(startsWithRank, app);
-                        } else if (appTitle.contains(constraintStr)) {
-                            containsRank++;
-                            suggestions.put(containsRank, app);
-                        }
-                    }
-                }
-
-                ArrayList<AppInfo> apps = new ArrayList<>();
-                for (AppInfo app: suggestions.values()) {
-                    apps.add(app);
-                }
+                // Narrows down the previous matches when the query is extended
+                AppSearchIndex.Result result = mSearchIndex.search(constraint, mLastResult);
+                mLastResult = result;
+
+                ArrayList<AppInfo> apps = result.getApps();
                 results.values = apps;
                 results.count = apps.size();
+            } else {
+                mLastResult = null;
             }
             return results;
         }
@@ -90,11 +75,13 @@ public class SearchAppsArrayAdapter extends ArrayAdapter<AppInfo> {
         }
     };
 
-    public ArrayList<AppInfo> mApps;
+    private final AppSearchIndex mSearchIndex;
+    // Only accessed from the filter thread
+    private AppSearchIndex.Result mLastResult;
 
-    public SearchAppsArrayAdapter(Context context, ArrayList<AppInfo> apps) {
+    public SearchAppsArrayAdapter(Context context, AppSearchIndex searchIndex) {
         super(context, R.layout.search_apps_item);
-        this.mApps = apps;
+        this.mSearchIndex = searchIndex;
     }
 
     private static class ViewHolder {
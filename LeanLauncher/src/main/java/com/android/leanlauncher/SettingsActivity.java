@@ -18,9 +18,7 @@
 package com.android.leanlauncher;
 
 import android.app.AlertDialog;
-import android.app.ProgressDialog;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.ListPreference;
 import android.preference.Preference;
@@ -111,35 +109,10 @@ public class SettingsActivity extends PreferenceActivity
                         (changedIconTheme.equals(getString(R.string.pref_no_icon_theme))) ?
                                 null :
                                 changedIconTheme);
-                iconCache.flush();
 
-                // need to make the user wait until icon pack's loaded
-                new AsyncTask<Void, Void, Void>() {
-                    // modal dialog is more appropriate
-                    private ProgressDialog dialog;
-
-                    @Override
-                    protected void onPreExecute() {
-                        if (!SettingsActivity.this.isFinishing()) {
-                            dialog = ProgressDialog.show(SettingsActivity.this, "",
-                                    getString(R.string.dialog_refresh_icons), true);
-                        }
-                    }
-
-                    @Override
-                    protected void onPostExecute(Void aVoid) {
-                        if (!SettingsActivity.this.isFinishing()) {
-                            dialog.dismiss();
-                        }
-                    }
-
-                    @Override
-                    protected Void doInBackground(Void... params) {
-                        iconCache.loadIconPackDrawables();
-                        LauncherAppState.getInstance().getModel().rebindItemsOnIconThemeChange();
-                        return null;
-                    }
-                }.execute();
+                // The icons are re-rendered and rebound progressively in background, the
+                // current ones stay until their replacements are ready
+                LauncherAppState.getInstance().getModel().rebindItemsOnIconThemeChange();
             }
         }
     }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+/**
+ * A cache which gives memory back when the system runs low on it, and fills up again on demand.
+ */
+interface TrimmableCache {
+    String getCacheName();
+
+    /**
+     * Returns roughly how many bytes the cache holds.
+     */
+    long getCacheSizeBytes();
+
+    /**
+     * Drops what the trim level calls for.
+     * @param level one of the TRIM_MEMORY_* levels of {@link android.content.ComponentCallbacks2}
+     */
+    void trimCache(int level);
+}
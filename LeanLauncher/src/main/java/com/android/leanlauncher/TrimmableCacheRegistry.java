@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * The caches of a {@link Launcher}, which are all trimmed together on memory pressure.
+ */
+class TrimmableCacheRegistry {
+    private static final String TAG = "Launcher.TrimmableCacheRegistry";
+    private static final boolean DEBUG = false;
+
+    private final ArrayList<TrimmableCache> mCaches = new ArrayList<TrimmableCache>();
+
+    void register(TrimmableCache cache) {
+        if (!mCaches.contains(cache)) {
+            mCaches.add(cache);
+        }
+    }
+
+    void unregister(TrimmableCache cache) {
+        mCaches.remove(cache);
+    }
+
+    /**
+     * Lets each cache trim itself according to its own policy for the level.
+     */
+    void trimMemory(int level) {
+        for (TrimmableCache cache : mCaches) {
+            final long before = DEBUG ? cache.getCacheSizeBytes() : 0;
+            cache.trimCache(level);
+            if (DEBUG) {
+                Log.d(TAG, "Trimmed " + cache.getCacheName() + " for level " + level + ": "
+                        + before + " -> " + cache.getCacheSizeBytes() + " bytes");
+            }
+        }
+    }
+
+    long getTotalSizeBytes() {
+        long total = 0;
+        for (TrimmableCache cache : mCaches) {
+            total += cache.getCacheSizeBytes();
+        }
+        return total;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Caches (" + getTotalSizeBytes() + " bytes):");
+        for (TrimmableCache cache : mCaches) {
+            writer.println(prefix + "  " + cache.getCacheName() + "="
+                    + cache.getCacheSizeBytes() + " bytes");
+        }
+    }
+}
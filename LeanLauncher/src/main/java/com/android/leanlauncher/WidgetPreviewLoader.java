@@ -17,7 +17,9 @@
 
 package com.android.leanlauncher;
 
+import android.app.ActivityManager;
 import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentCallbacks2;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
@@ -30,7 +32,6 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteReadOnlyDatabaseException;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
-import android.graphics.BitmapFactory;
 import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Paint;
@@ -40,17 +41,27 @@ import android.graphics.Shader;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.support.v4.util.ArrayMap;
+import android.support.v4.util.LruCache;
 import android.util.Log;
 import com.android.leanlauncher.compat.AppWidgetManagerCompat;
 import com.android.leanlauncher.compat.UserHandleCompat;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.ref.SoftReference;
-import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
@@ -114,14 +125,6 @@ public class WidgetPreviewLoader {
         }
     }
 
-    private static class BitmapFactoryOptionsCache extends
-            SoftReferenceThreadLocal<BitmapFactory.Options> {
-        @Override
-        protected BitmapFactory.Options initialValue() {
-            return new BitmapFactory.Options();
-        }
-    }
-
     private static final String TAG = "WidgetPreviewLoader";
     private static final String ANDROID_INCREMENTAL_VERSION_NAME_KEY = "android.incremental.version";
 
@@ -139,10 +142,56 @@ public class WidgetPreviewLoader {
     private final RectCache mCachedAppWidgetPreviewDestRect = new RectCache();
     private final PaintCache mCachedAppWidgetPreviewPaint = new PaintCache();
     private final PaintCache mDefaultAppWidgetPreviewPaint = new PaintCache();
-    private final BitmapFactoryOptionsCache mCachedBitmapFactoryOptions = new BitmapFactoryOptionsCache();
 
-    private final ArrayMap<String, WeakReference<Bitmap>> mLoadedPreviews = new ArrayMap<>();
-    private final ArrayList<SoftReference<Bitmap>> mUnusedBitmaps = new ArrayList<SoftReference<Bitmap>>();
+    /**
+     * Previews by object name, bounded by their size in bytes. Previews which aren't shown by any
+     * view when they are evicted are handed to the bitmap pool.
+     */
+    private class PreviewCache extends LruCache<String, Bitmap> {
+        public PreviewCache(int maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        protected int sizeOf(String name, Bitmap preview) {
+            return preview.getByteCount();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, String name, Bitmap oldPreview,
+                Bitmap newPreview) {
+            if (oldPreview == newPreview) {
+                return;
+            }
+            if (evicted) {
+                LauncherTrace.incrementCounter(LauncherTrace.COUNTER_WIDGET_PREVIEW_EVICTIONS);
+            }
+            synchronized (mUnusedBitmaps) {
+                if (mBitmapsInUse.containsKey(oldPreview)) {
+                    // Pooled once the view showing it lets go of it
+                    mEvictedBitmapsInUse.add(oldPreview);
+                } else {
+                    addUnusedBitmapLocked(oldPreview);
+                }
+            }
+        }
+    }
+
+    // Share of the memory class used for previews, and for the bitmaps they can be decoded into
+    private static final int PREVIEW_CACHE_MEMORY_FRACTION = 16;
+    private static final int BITMAP_POOL_MEMORY_FRACTION = 64;
+
+    private final PreviewCache mLoadedPreviews;
+
+    // All of the following are guarded by mUnusedBitmaps
+    private final ArrayMap<Long, ArrayList<Bitmap>> mUnusedBitmaps = new ArrayMap<>();
+    // Number of views showing each preview handed out by getPreview. The previews are only
+    // weakly held, so that those of views dropped without recycleBitmap aren't kept.
+    private final WeakHashMap<Bitmap, Integer> mBitmapsInUse = new WeakHashMap<>();
+    private final Set<Bitmap> mEvictedBitmapsInUse =
+            Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+    private final int mMaxUnusedBitmapBytes;
+    private int mUnusedBitmapBytes;
 
     private final Context mContext;
     private final int mAppIconSize;
@@ -172,22 +221,22 @@ public class WidgetPreviewLoader {
 
         mDb = app.getWidgetPreviewCacheDb();
 
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClassBytes = am.getMemoryClass() * 1024 * 1024;
+        mLoadedPreviews = new PreviewCache(memoryClassBytes / PREVIEW_CACHE_MEMORY_FRACTION);
+        mMaxUnusedBitmapBytes = memoryClassBytes / BITMAP_POOL_MEMORY_FRACTION;
+
         SharedPreferences sp = context.getSharedPreferences(
                 LauncherAppState.getSharedPreferencesKey(), Context.MODE_PRIVATE);
         final String lastVersionName = sp.getString(ANDROID_INCREMENTAL_VERSION_NAME_KEY, null);
         final String versionName = android.os.Build.VERSION.INCREMENTAL;
         if (!versionName.equals(lastVersionName)) {
-            try {
-                // clear all the previews whenever the system version changes, to ensure that
-                // previews are up-to-date for any apps that might have been updated with the system
-                clearDb();
-            } catch (SQLiteReadOnlyDatabaseException e) {
-                Log.e(TAG, "Error clearing widget preview db : " + e);
-            } finally {
-                SharedPreferences.Editor editor = sp.edit();
-                editor.putString(ANDROID_INCREMENTAL_VERSION_NAME_KEY, versionName);
-                editor.apply();
-            }
+            // clear all the previews whenever the system version changes, to ensure that
+            // previews are up-to-date for any apps that might have been updated with the system
+            clearDb(mDb);
+            SharedPreferences.Editor editor = sp.edit();
+            editor.putString(ANDROID_INCREMENTAL_VERSION_NAME_KEY, versionName);
+            editor.apply();
         }
     }
 
@@ -215,46 +264,50 @@ public class WidgetPreviewLoader {
                 return null;
             }
         }
-        synchronized(mLoadedPreviews) {
-            // check if it exists in our existing cache
-            if (mLoadedPreviews.containsKey(name)) {
-                WeakReference<Bitmap> bitmapReference = mLoadedPreviews.get(name);
-                Bitmap bitmap = bitmapReference.get();
-                if (bitmap != null) {
-                    return bitmap;
-                }
+        Bitmap unusedBitmap;
+        synchronized (mUnusedBitmaps) {
+            // check if it exists in our existing cache. It is marked in use while holding the
+            // lock, so that it can't be evicted into the pool before it is
+            Bitmap cached = mLoadedPreviews.get(name);
+            if (cached != null) {
+                markInUseLocked(cached);
+                LauncherTrace.incrementCounter(LauncherTrace.COUNTER_WIDGET_PREVIEW_CACHE_HITS);
+                return cached;
             }
-        }
 
-        Bitmap unusedBitmap = null;
-        synchronized(mUnusedBitmaps) {
             // not in cache; we need to load it from the db
-            while (unusedBitmap == null && mUnusedBitmaps.size() > 0) {
-                Bitmap candidate = mUnusedBitmaps.remove(0).get();
-                if (candidate != null && candidate.isMutable() &&
-                        candidate.getWidth() == mPreviewBitmapWidth &&
-                        candidate.getHeight() == mPreviewBitmapHeight) {
-                    unusedBitmap = candidate;
-                }
-            }
-            if (unusedBitmap != null) {
-                final Canvas c = mCachedAppWidgetPreviewCanvas.get();
-                c.setBitmap(unusedBitmap);
-                c.drawColor(0, PorterDuff.Mode.CLEAR);
-                c.setBitmap(null);
-            }
+            unusedBitmap = takeUnusedBitmapLocked(mPreviewBitmapWidth, mPreviewBitmapHeight);
         }
-
-        if (unusedBitmap == null) {
+        LauncherTrace.incrementCounter(LauncherTrace.COUNTER_WIDGET_PREVIEW_CACHE_MISSES);
+        if (unusedBitmap != null) {
+            final Canvas c = mCachedAppWidgetPreviewCanvas.get();
+            c.setBitmap(unusedBitmap);
+            c.drawColor(0, PorterDuff.Mode.CLEAR);
+            c.setBitmap(null);
+        } else {
             unusedBitmap = Bitmap.createBitmap(mPreviewBitmapWidth, mPreviewBitmapHeight,
                     Bitmap.Config.ARGB_8888);
         }
-        Bitmap preview = readFromDb(name, unusedBitmap);
+        // Previews are read too often to be recorded in the loader trace one by one
+        final long readStart = SystemClock.uptimeMillis();
+        LauncherTrace.beginSection(LauncherTrace.SECTION_READ_WIDGET_PREVIEW);
+        Bitmap preview;
+        try {
+            preview = readFromDb(name, unusedBitmap);
+        } finally {
+            LauncherTrace.endSection();
+        }
+        LauncherTrace.addToCounter(LauncherTrace.COUNTER_WIDGET_PREVIEW_DB_READ_MS,
+                SystemClock.uptimeMillis() - readStart);
+        LauncherTrace.incrementCounter(preview != null
+                ? LauncherTrace.COUNTER_WIDGET_PREVIEW_DB_HITS
+                : LauncherTrace.COUNTER_WIDGET_PREVIEW_DB_MISSES);
 
         if (preview != null) {
-            synchronized(mLoadedPreviews) {
-                mLoadedPreviews.put(name, new WeakReference<Bitmap>(preview));
+            synchronized (mUnusedBitmaps) {
+                markInUseLocked(preview);
             }
+            mLoadedPreviews.put(name, preview);
             return preview;
         } else {
             // it's not in the db... we need to generate it
@@ -264,9 +317,11 @@ public class WidgetPreviewLoader {
                 throw new RuntimeException("generatePreview is not recycling the bitmap " + o);
             }
 
-            synchronized(mLoadedPreviews) {
-                mLoadedPreviews.put(name, new WeakReference<Bitmap>(preview));
+            synchronized (mUnusedBitmaps) {
+                markInUseLocked(preview);
             }
+            LauncherTrace.incrementCounter(LauncherTrace.COUNTER_WIDGET_PREVIEWS_GENERATED);
+            mLoadedPreviews.put(name, preview);
 
             // write to db on a thread pool... this can be done lazily and improves the performance
             // of the first time widget previews are loaded
@@ -281,38 +336,112 @@ public class WidgetPreviewLoader {
         }
     }
 
+    /**
+     * Called when a preview returned by {@link #getPreview} is no longer shown. It stays in the
+     * cache, and its bitmap can be reused once it is evicted.
+     */
     public void recycleBitmap(Object o, Bitmap bitmapToRecycle) {
-        String name = getObjectName(o);
-        synchronized (mLoadedPreviews) {
-            if (mLoadedPreviews.containsKey(name)) {
-                Bitmap b = mLoadedPreviews.get(name).get();
-                if (b == bitmapToRecycle) {
-                    mLoadedPreviews.remove(name);
-                    if (bitmapToRecycle.isMutable()) {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(new SoftReference<Bitmap>(b));
-                        }
-                    }
-                } else {
-                    throw new RuntimeException("Bitmap passed in doesn't match up");
-                }
+        synchronized (mUnusedBitmaps) {
+            Integer count = mBitmapsInUse.get(bitmapToRecycle);
+            if (count == null) {
+                return;
             }
+            if (count > 1) {
+                mBitmapsInUse.put(bitmapToRecycle, count - 1);
+                return;
+            }
+            mBitmapsInUse.remove(bitmapToRecycle);
+            if (mEvictedBitmapsInUse.remove(bitmapToRecycle)) {
+                addUnusedBitmapLocked(bitmapToRecycle);
+            }
+        }
+    }
+
+    /**
+     * Returns the bytes held by the cached previews and the bitmap pool.
+     */
+    public long getSizeBytes() {
+        synchronized (mUnusedBitmaps) {
+            return mLoadedPreviews.size() + mUnusedBitmapBytes;
+        }
+    }
+
+    /**
+     * Shrinks the preview cache and the bitmap pool according to the trim level. The evicted
+     * previews still shown are forgotten rather than pooled once they are no longer shown.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mLoadedPreviews.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mLoadedPreviews.trimToSize(mLoadedPreviews.maxSize() / 2);
+        }
+        synchronized (mUnusedBitmaps) {
+            mUnusedBitmaps.clear();
+            mUnusedBitmapBytes = 0;
+            for (Bitmap evicted : mEvictedBitmapsInUse) {
+                mBitmapsInUse.remove(evicted);
+            }
+            mEvictedBitmapsInUse.clear();
+        }
+    }
+
+    private void markInUseLocked(Bitmap preview) {
+        Integer count = mBitmapsInUse.get(preview);
+        mBitmapsInUse.put(preview, count == null ? 1 : count + 1);
+    }
+
+    private static long getPoolKey(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+    private Bitmap takeUnusedBitmapLocked(int width, int height) {
+        ArrayList<Bitmap> bitmaps = mUnusedBitmaps.get(getPoolKey(width, height));
+        if (bitmaps == null || bitmaps.isEmpty()) {
+            return null;
+        }
+        Bitmap bitmap = bitmaps.remove(bitmaps.size() - 1);
+        mUnusedBitmapBytes -= bitmap.getByteCount();
+        return bitmap;
+    }
+
+    private void addUnusedBitmapLocked(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled()
+                || mUnusedBitmapBytes + bitmap.getByteCount() > mMaxUnusedBitmapBytes) {
+            return;
+        }
+        long key = getPoolKey(bitmap.getWidth(), bitmap.getHeight());
+        ArrayList<Bitmap> bitmaps = mUnusedBitmaps.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<Bitmap>();
+            mUnusedBitmaps.put(key, bitmaps);
         }
+        bitmaps.add(bitmap);
+        mUnusedBitmapBytes += bitmap.getByteCount();
     }
 
+    /**
+     * Index of the previews stored in the preview directory. The pixels of each preview are kept
+     * raw in their own file, so that reading one is a copy from a mapped file into a bitmap
+     * instead of a PNG decode.
+     */
     static class CacheDb extends SQLiteOpenHelper {
-        final static int DB_VERSION = 2;
+        final static int DB_VERSION = 4;
         final static String TABLE_NAME = "shortcut_and_widget_previews";
         final static String COLUMN_NAME = "name";
         final static String COLUMN_SIZE = "size";
-        final static String COLUMN_PREVIEW_BITMAP = "preview_bitmap";
+        final static String COLUMN_WIDTH = "width";
+        final static String COLUMN_HEIGHT = "height";
         Context mContext;
+        final File mPreviewDir;
 
         public CacheDb(Context context) {
             super(context, new File(context.getCacheDir(),
                     LauncherFiles.WIDGET_PREVIEWS_DB).getPath(), null, DB_VERSION);
             // Store the context for later use
             mContext = context;
+            mPreviewDir = new File(context.getCacheDir(), LauncherFiles.WIDGET_PREVIEWS_DIR);
         }
 
         @Override
@@ -320,7 +449,8 @@ public class WidgetPreviewLoader {
             database.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
                     COLUMN_NAME + " TEXT NOT NULL, " +
                     COLUMN_SIZE + " TEXT NOT NULL, " +
-                    COLUMN_PREVIEW_BITMAP + " BLOB NOT NULL, " +
+                    COLUMN_WIDTH + " INTEGER NOT NULL, " +
+                    COLUMN_HEIGHT + " INTEGER NOT NULL, " +
                     "PRIMARY KEY (" + COLUMN_NAME + ", " + COLUMN_SIZE + ") " +
                     ");");
         }
@@ -329,9 +459,65 @@ public class WidgetPreviewLoader {
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             if (oldVersion != newVersion) {
                 // Delete all the records; they'll be repopulated as this is a cache
-                db.execSQL("DELETE FROM " + TABLE_NAME);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+                onCreate(db);
+                deletePreviewFiles(mPreviewDir);
             }
         }
+
+        @Override
+        public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            onUpgrade(db, oldVersion, newVersion);
+        }
+
+        File getPreviewFile(String name, String size) {
+            // Object names contain slashes and can be longer than a file name may be, so files
+            // are named by a hash of the name. The index keeps the name.
+            return new File(new File(mPreviewDir, size), getFileName(name));
+        }
+
+        private static String getFileName(String name) {
+            final MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            final byte[] hash = digest.digest(name.getBytes());
+            final StringBuilder fileName = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                fileName.append(Character.forDigit((b >> 4) & 0xF, 16));
+                fileName.append(Character.forDigit(b & 0xF, 16));
+            }
+            return fileName.toString();
+        }
+
+        /**
+         * Deletes the index entries matching the selection, and their files.
+         */
+        void deletePreviews(String selection, String[] selectionArgs) {
+            SQLiteDatabase db = getWritableDatabase();
+            Cursor c = db.query(TABLE_NAME, new String[] { COLUMN_NAME, COLUMN_SIZE },
+                    selection, selectionArgs, null, null, null);
+            try {
+                while (c.moveToNext()) {
+                    getPreviewFile(c.getString(0), c.getString(1)).delete();
+                }
+            } finally {
+                c.close();
+            }
+            db.delete(TABLE_NAME, selection, selectionArgs);
+        }
+
+        private static void deletePreviewFiles(File file) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    deletePreviewFiles(child);
+                }
+            }
+            file.delete();
+        }
     }
 
     private static final String WIDGET_PREFIX = "Widget:";
@@ -359,16 +545,54 @@ public class WidgetPreviewLoader {
 
     private void writeToDb(Object o, Bitmap preview) {
         String name = getObjectName(o);
+        File file = mDb.getPreviewFile(name, mSize);
+        File dir = file.getParentFile();
+        dir.mkdirs();
+
+        ByteBuffer pixels = ByteBuffer.allocateDirect(preview.getByteCount());
+        preview.copyPixelsToBuffer(pixels);
+        pixels.rewind();
+        File tmpFile = null;
+        FileOutputStream out = null;
+        try {
+            // Readers only ever see complete files. Each write has its own temporary file, as
+            // the same preview can be written by two threads at once.
+            tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+            out = new FileOutputStream(tmpFile);
+            FileChannel channel = out.getChannel();
+            while (pixels.hasRemaining()) {
+                channel.write(pixels);
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Can't rename " + tmpFile);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing widget preview " + name + ": " + e);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+            return;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
         SQLiteDatabase db = mDb.getWritableDatabase();
         ContentValues values = new ContentValues();
 
         values.put(CacheDb.COLUMN_NAME, name);
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        preview.compress(Bitmap.CompressFormat.PNG, 100, stream);
-        values.put(CacheDb.COLUMN_PREVIEW_BITMAP, stream.toByteArray());
         values.put(CacheDb.COLUMN_SIZE, mSize);
+        values.put(CacheDb.COLUMN_WIDTH, preview.getWidth());
+        values.put(CacheDb.COLUMN_HEIGHT, preview.getHeight());
         try {
-            db.insert(CacheDb.TABLE_NAME, null, values);
+            db.insertWithOnConflict(CacheDb.TABLE_NAME, null, values,
+                    SQLiteDatabase.CONFLICT_REPLACE);
         } catch (SQLiteDiskIOException e) {
             recreateDb();
         } catch (SQLiteCantOpenDatabaseException e) {
@@ -376,15 +600,19 @@ public class WidgetPreviewLoader {
         }
     }
 
-    private void clearDb() {
-        SQLiteDatabase db = mDb.getWritableDatabase();
-        // Delete everything
-        try {
-            db.delete(CacheDb.TABLE_NAME, null, null);
-        } catch (SQLiteDiskIOException e) {
-        } catch (SQLiteCantOpenDatabaseException e) {
-            throw e;
-        }
+    private static void clearDb(final CacheDb cacheDb) {
+        // Delete everything, which walks the whole preview directory
+        new AsyncTask<Void, Void, Void>() {
+            public Void doInBackground(Void ... args) {
+                try {
+                    cacheDb.deletePreviews(null, null);
+                } catch (SQLiteReadOnlyDatabaseException e) {
+                    Log.e(TAG, "Error clearing widget preview db : " + e);
+                } catch (SQLiteDiskIOException ignored) {
+                }
+                return null;
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void) null);
     }
 
     public static void removePackageFromDb(final CacheDb cacheDb, final String packageName) {
@@ -393,9 +621,8 @@ public class WidgetPreviewLoader {
         }
         new AsyncTask<Void, Void, Void>() {
             public Void doInBackground(Void ... args) {
-                SQLiteDatabase db = cacheDb.getWritableDatabase();
                 try {
-                    db.delete(CacheDb.TABLE_NAME,
+                    cacheDb.deletePreviews(
                             CacheDb.COLUMN_NAME + " LIKE ? OR " +
                             CacheDb.COLUMN_NAME + " LIKE ?", // SELECT query
                             new String[] {
@@ -415,9 +642,8 @@ public class WidgetPreviewLoader {
     private static void removeItemFromDb(final CacheDb cacheDb, final String objectName) {
         new AsyncTask<Void, Void, Void>() {
             public Void doInBackground(Void ... args) {
-                SQLiteDatabase db = cacheDb.getWritableDatabase();
                 try {
-                    db.delete(CacheDb.TABLE_NAME,
+                    cacheDb.deletePreviews(
                             CacheDb.COLUMN_NAME + " = ? ", // SELECT query
                             new String[] { objectName }); // args to SELECT query
                 } catch (SQLiteDiskIOException ignored) {
@@ -436,7 +662,7 @@ public class WidgetPreviewLoader {
         Cursor result;
         try {
             result = db.query(CacheDb.TABLE_NAME,
-                    new String[] { CacheDb.COLUMN_PREVIEW_BITMAP }, // cols to return
+                    new String[] { CacheDb.COLUMN_WIDTH, CacheDb.COLUMN_HEIGHT }, // cols to return
                     mCachedSelectQuery, // select query
                     new String[] { name, mSize }, // args to select query
                     null,
@@ -449,23 +675,43 @@ public class WidgetPreviewLoader {
         } catch (SQLiteCantOpenDatabaseException e) {
             throw e;
         }
-        if (result.getCount() > 0) {
-            result.moveToFirst();
-            byte[] blob = result.getBlob(0);
+        int width, height;
+        try {
+            if (!result.moveToFirst()) {
+                return null;
+            }
+            width = result.getInt(0);
+            height = result.getInt(1);
+        } finally {
             result.close();
-            final BitmapFactory.Options opts = mCachedBitmapFactoryOptions.get();
-            opts.inBitmap = b;
-            opts.inSampleSize = 1;
-            try {
-                return BitmapFactory.decodeByteArray(blob, 0, blob.length, opts);
-            } catch (IllegalArgumentException e) {
+        }
+
+        if (width != b.getWidth() || height != b.getHeight()) {
+            removeItemFromDb(mDb, name);
+            return null;
+        }
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mDb.getPreviewFile(name, mSize), "r");
+            FileChannel channel = file.getChannel();
+            if (channel.size() != b.getByteCount()) {
                 removeItemFromDb(mDb, name);
                 return null;
             }
-        } else {
-            result.close();
+            b.copyPixelsFromBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            removeItemFromDb(mDb, name);
             return null;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+            }
         }
+        return b;
     }
 
     private Bitmap generatePreview(Object info, Bitmap preview) {
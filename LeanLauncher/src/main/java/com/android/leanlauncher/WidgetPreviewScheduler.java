@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads widget previews in the background, one item at a time, in order of the distance of their
+ * page from the page being shown. Each preview is delivered on the main thread as soon as it is
+ * loaded, so the visible page fills in first and doesn't wait for its neighbours.
+ *
+ * All the methods but the loading itself must be called on the main thread.
+ */
+class WidgetPreviewScheduler {
+
+    interface Callback {
+        /**
+         * Called on the main thread with the preview of a request which hasn't been cancelled.
+         */
+        void onPreviewLoaded(Request request, Bitmap preview);
+    }
+
+    // Leave a core to the main thread
+    private static final int POOL_SIZE =
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private final WidgetPreviewLoader mPreviewLoader;
+    private final Callback mCallback;
+    private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
+    private final PriorityBlockingQueue<Runnable> mQueue = new PriorityBlockingQueue<Runnable>();
+    private final ThreadPoolExecutor mExecutor;
+    // The requests which haven't been delivered yet
+    private final ArrayList<Request> mPendingRequests = new ArrayList<Request>();
+    private int mTargetPage;
+    private long mNextSequence;
+
+    class Request implements Runnable, Comparable<Request> {
+        final int page;
+        final int index;
+        final Object item;
+        final PagedViewWidget widget;
+        private final long mSequence;
+        // Distance of the page from the target page when the request was last queued
+        private int mPriority;
+        private volatile boolean mCancelled;
+
+        Request(int page, int index, Object item, PagedViewWidget widget) {
+            this.page = page;
+            this.index = index;
+            this.item = item;
+            this.widget = widget;
+            mSequence = mNextSequence++;
+            mPriority = Math.abs(page - mTargetPage);
+        }
+
+        @Override
+        public int compareTo(Request another) {
+            if (mPriority != another.mPriority) {
+                return mPriority < another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) return;
+            final Bitmap preview = mPreviewLoader.getPreview(item);
+            mMainThreadExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mPendingRequests.remove(Request.this);
+                    if (mCancelled) {
+                        mPreviewLoader.recycleBitmap(item, preview);
+                    } else {
+                        mCallback.onPreviewLoaded(Request.this, preview);
+                    }
+                }
+            });
+        }
+    }
+
+    WidgetPreviewScheduler(WidgetPreviewLoader previewLoader, Callback callback) {
+        mPreviewLoader = previewLoader;
+        mCallback = callback;
+        mExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 1, TimeUnit.SECONDS, mQueue,
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "widget-preview-" + mCount.getAndIncrement());
+                    }
+                });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the loading of the preview of an item shown by the widget.
+     */
+    void load(int page, int index, Object item, PagedViewWidget widget) {
+        Request request = new Request(page, index, item, widget);
+        mPendingRequests.add(request);
+        // Not execute(), which hands a request straight to a new thread while the pool isn't full,
+        // ahead of the requests of the page being shown
+        mQueue.add(request);
+        mExecutor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Sets the page being shown, or being scrolled to, which reorders the pending requests by
+     * their distance from it.
+     */
+    void setTargetPage(int page) {
+        if (mTargetPage == page) return;
+        mTargetPage = page;
+
+        ArrayList<Runnable> queued = new ArrayList<Runnable>(mQueue.size());
+        mQueue.drainTo(queued);
+        for (Runnable r : queued) {
+            Request request = (Request) r;
+            request.mPriority = Math.abs(request.page - page);
+        }
+        mQueue.addAll(queued);
+    }
+
+    void cancelPage(int page) {
+        Iterator<Request> iter = mPendingRequests.iterator();
+        while (iter.hasNext()) {
+            Request request = iter.next();
+            if (request.page == page) {
+                cancel(request);
+                iter.remove();
+            }
+        }
+    }
+
+    void cancelAll() {
+        for (Request request : mPendingRequests) {
+            cancel(request);
+        }
+        mPendingRequests.clear();
+    }
+
+    /**
+     * Returns whether there are requests for the page which haven't been delivered yet.
+     */
+    boolean hasPendingRequests(int page) {
+        for (Request request : mPendingRequests) {
+            if (request.page == page) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void cancel(Request request) {
+        request.mCancelled = true;
+        mQueue.remove(request);
+    }
+}
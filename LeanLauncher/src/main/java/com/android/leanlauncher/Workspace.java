@@ -163,6 +163,7 @@ public class Workspace extends ViewGroup
     private boolean mInScrollArea = false;
 
     private HolographicOutlineHelper mOutlineHelper;
+    private DragOutlineCache mDragOutlineCache;
     private Bitmap mDragOutline = null;
     private static final Rect sTempRect = new Rect();
     private final int[] mTempXY = new int[2];
@@ -226,6 +227,7 @@ public class Workspace extends ViewGroup
         super(context, attrs, defStyle);
 
         mOutlineHelper = HolographicOutlineHelper.obtain(context);
+        mDragOutlineCache = new DragOutlineCache(context, mOutlineHelper);
 
         mLauncher = (Launcher) context;
         final Resources res = getResources();
@@ -393,6 +395,10 @@ public class Workspace extends ViewGroup
         return mWorkspace;
     }
 
+    DragOutlineCache getDragOutlineCache() {
+        return mDragOutlineCache;
+    }
+
     // At bind time, we use the rank (screenId) to compute x and y for hotseat items.
     // See implementation for parameter definition.
     void addInScreenFromBind(View child, long container, int x, int y,
@@ -545,8 +551,11 @@ public class Workspace extends ViewGroup
                     LauncherAppWidgetHostView lahv = (LauncherAppWidgetHostView) info.hostView;
                     if (lahv != null && lahv.isReinflateRequired()) {
                         mLauncher.removeAppWidget(info);
-                        // Remove the current widget which is inflated with the wrong orientation
+                        // Remove the current widget which is inflated with the wrong orientation,
+                        // and keep it for when that orientation comes back. Binding it again
+                        // reuses the view kept for the current orientation, which can be this one
                         cl.removeView(lahv);
+                        mLauncher.getAppWidgetHost().cacheView(lahv);
                         mLauncher.bindAppWidget(info);
                     }
                 }
@@ -1258,21 +1267,61 @@ public class Workspace extends ViewGroup
     }
 
     /**
-     * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Returns a new bitmap with the View drawn as its outline is, before it is blurred.
      */
-    private Bitmap createDragOutline(View v, int padding) {
-        final int outlineColor = getResources().getColor(R.color.outline_color);
+    private Bitmap drawDragOutlineShape(View v, int padding) {
         final Bitmap b = Bitmap.createBitmap(
                 v.getWidth() + padding, v.getHeight() + padding, Bitmap.Config.ARGB_8888);
 
         mCanvas.setBitmap(b);
         drawDragView(v, mCanvas, padding);
-        mOutlineHelper.applyExpensiveOutlineWithBlur(b, mCanvas, outlineColor, outlineColor);
         mCanvas.setBitmap(null);
         return b;
     }
 
+    /**
+     * Starts blurring the outline of an item of the workspace in the background, once a long
+     * press is pending on it, so that the drag doesn't have to when it begins. Only drawing the
+     * view is left to the main thread.
+     */
+    void prepareDragOutline(View v) {
+        if (!(v.getParent() instanceof ShortcutAndWidgetContainer)
+                || v.getParent().getParent() != mWorkspace) {
+            return;
+        }
+        final DragOutlineCache.Key key = DragOutlineCache.getKey(v, DRAG_BITMAP_PADDING);
+        if (key == null || mDragOutlineCache.contains(key)) {
+            return;
+        }
+        final int outlineColor = getResources().getColor(R.color.outline_color);
+        mDragOutlineCache.render(key, drawDragOutlineShape(v, DRAG_BITMAP_PADDING), outlineColor,
+                outlineColor, true);
+    }
+
+    /**
+     * Returns the bitmap to be used as the object outline, e.g. to visualize the drop location.
+     * The outlines of items are cached, and must not be modified.
+     */
+    private Bitmap createDragOutline(View v, int padding) {
+        final int outlineColor = getResources().getColor(R.color.outline_color);
+        final DragOutlineCache.Key key = DragOutlineCache.getKey(v, padding);
+        if (key != null) {
+            if (!mDragOutlineCache.contains(key)) {
+                mDragOutlineCache.render(key, drawDragOutlineShape(v, padding), outlineColor,
+                        outlineColor, false);
+            }
+            final Bitmap outline = mDragOutlineCache.get(key);
+            if (outline != null) {
+                return outline;
+            }
+        }
+
+        final Bitmap b = drawDragOutlineShape(v, padding);
+        mCanvas.setBitmap(b);
+        mOutlineHelper.applyExpensiveOutlineWithBlur(b, mCanvas, outlineColor, outlineColor);
+        return b;
+    }
+
     /**
      * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
      * Responsibility for the bitmap is transferred to the caller.
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.v4.util.ArrayMap;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import com.android.leanlauncher.compat.UserHandleCompat;
+import com.android.leanlauncher.compat.UserManagerCompat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+
+/**
+ * Compact copy of the shortcuts last bound to the workspace, with their icons, which the launcher
+ * shows on a cold start while the loader reads the real workspace from the db.
+ */
+class WorkspaceSnapshot {
+    private static final String TAG = "Launcher.WorkspaceSnapshot";
+
+    private static final int VERSION = 1;
+
+    static class Item {
+        final ShortcutInfo info;
+        final Bitmap icon;
+
+        Item(ShortcutInfo info, Bitmap icon) {
+            this.info = info;
+            this.icon = icon;
+        }
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getCacheDir(), LauncherFiles.WORKSPACE_SNAPSHOT));
+    }
+
+    /**
+     * Writes the shortcuts on the workspace to the snapshot. Should be called in background.
+     */
+    static void write(Context context, ArrayList<ItemInfo> workspaceItems, IconCache iconCache,
+            DeviceProfile grid) {
+        UserManagerCompat userManager = UserManagerCompat.getInstance(context);
+        AtomicFile file = getFile(context);
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(VERSION);
+            out.writeInt((int) grid.numColumns);
+            out.writeInt((int) grid.numRows);
+            out.writeInt(grid.iconSizePx);
+
+            ArrayList<ShortcutInfo> shortcuts = new ArrayList<ShortcutInfo>();
+            for (ItemInfo item : workspaceItems) {
+                if (item instanceof ShortcutInfo && ((ShortcutInfo) item).intent != null
+                        && item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
+                    shortcuts.add((ShortcutInfo) item);
+                }
+            }
+
+            out.writeInt(shortcuts.size());
+            ByteArrayOutputStream iconBytes = new ByteArrayOutputStream();
+            for (ShortcutInfo info : shortcuts) {
+                out.writeLong(info.id);
+                out.writeInt(info.itemType);
+                out.writeInt(info.cellX);
+                out.writeInt(info.cellY);
+                out.writeUTF(info.title != null ? info.title.toString() : "");
+                out.writeUTF(info.intent.toUri(0));
+                out.writeLong(userManager.getSerialNumberForUser(info.user));
+                out.writeInt(info.isDisabled);
+
+                iconBytes.reset();
+                info.getIcon(iconCache).compress(Bitmap.CompressFormat.PNG, 100, iconBytes);
+                out.writeInt(iconBytes.size());
+                iconBytes.writeTo(out);
+            }
+            out.flush();
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing workspace snapshot: " + e);
+            if (fos != null) {
+                file.failWrite(fos);
+            }
+        }
+    }
+
+    /**
+     * Reads the snapshot, if it was written for the same grid. Should be called in background.
+     * @return null if there is no usable snapshot
+     */
+    static ArrayList<Item> read(Context context, DeviceProfile grid) {
+        UserManagerCompat userManager = UserManagerCompat.getInstance(context);
+        ArrayMap<Long, UserHandleCompat> users = new ArrayMap<Long, UserHandleCompat>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(getFile(context).openRead()));
+            if (in.readInt() != VERSION
+                    || in.readInt() != (int) grid.numColumns
+                    || in.readInt() != (int) grid.numRows
+                    || in.readInt() != grid.iconSizePx) {
+                return null;
+            }
+
+            int count = in.readInt();
+            ArrayList<Item> items = new ArrayList<Item>(count);
+            for (int i = 0; i < count; i++) {
+                ShortcutInfo info = new ShortcutInfo();
+                info.id = in.readLong();
+                info.itemType = in.readInt();
+                info.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+                info.cellX = in.readInt();
+                info.cellY = in.readInt();
+                info.spanX = 1;
+                info.spanY = 1;
+                info.title = in.readUTF();
+                String intentDescription = in.readUTF();
+                long serialNumber = in.readLong();
+                info.isDisabled = in.readInt();
+                byte[] iconBytes = new byte[in.readInt()];
+                in.readFully(iconBytes);
+
+                UserHandleCompat user = users.get(serialNumber);
+                if (user == null) {
+                    user = userManager.getUserForSerialNumber(serialNumber);
+                    if (user == null) {
+                        continue;
+                    }
+                    users.put(serialNumber, user);
+                }
+                info.user = user;
+                try {
+                    info.intent = Intent.parseUri(intentDescription, 0);
+                } catch (URISyntaxException e) {
+                    continue;
+                }
+                Bitmap icon = BitmapFactory.decodeByteArray(iconBytes, 0, iconBytes.length);
+                if (icon != null) {
+                    items.add(new Item(info, icon));
+                }
+            }
+            return items;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading workspace snapshot: " + e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Write-behind queue for the favorites table. Writes to the same item are coalesced, and all the
+ * pending writes are applied in one transaction, with a single change notification, by
+ * {@link #flush}.
+ */
+class WorkspaceWriteQueue {
+    private static final String TAG = "Launcher.WorkspaceWriteQueue";
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_UPDATE = 1;
+    private static final int OP_DELETE = 2;
+
+    private static class PendingWrite {
+        int op;
+        // null for deletes
+        ContentValues values;
+
+        PendingWrite(int op, ContentValues values) {
+            this.op = op;
+            this.values = values;
+        }
+    }
+
+    // Pending writes by item id, in the order in which the items were first written
+    private final LinkedHashMap<Long, PendingWrite> mPendingWrites =
+            new LinkedHashMap<Long, PendingWrite>();
+    private boolean mNotify;
+
+    /**
+     * Queues the insertion of a new item.
+     * @return true if there were no pending writes before
+     */
+    synchronized boolean insert(long id, ContentValues values, boolean notify) {
+        boolean wasEmpty = mPendingWrites.isEmpty();
+        mPendingWrites.put(id, new PendingWrite(OP_INSERT, new ContentValues(values)));
+        mNotify |= notify;
+        return wasEmpty;
+    }
+
+    /**
+     * Queues an update of an item, merged into the item's pending insert or update if any.
+     * @return true if there were no pending writes before
+     */
+    synchronized boolean update(long id, ContentValues values) {
+        boolean wasEmpty = mPendingWrites.isEmpty();
+        PendingWrite write = mPendingWrites.get(id);
+        if (write == null) {
+            mPendingWrites.put(id, new PendingWrite(OP_UPDATE, new ContentValues(values)));
+        } else if (write.op != OP_DELETE) {
+            write.values.putAll(values);
+        }
+        return wasEmpty;
+    }
+
+    /**
+     * Queues the deletion of an item, which drops its pending insert or update if any.
+     * @return true if there were no pending writes before
+     */
+    synchronized boolean delete(long id) {
+        boolean wasEmpty = mPendingWrites.isEmpty();
+        PendingWrite write = mPendingWrites.get(id);
+        if (write != null && write.op == OP_INSERT) {
+            // It never made it to the db
+            mPendingWrites.remove(id);
+        } else {
+            mPendingWrites.put(id, new PendingWrite(OP_DELETE, null));
+        }
+        return wasEmpty;
+    }
+
+    /**
+     * Applies all the pending writes in a single batch. The writes are only dropped from the queue
+     * once they made it to the db. If the batch is refused, the writes are applied one at a time,
+     * so that only the writes which can't be applied are lost.
+     * @return false if writes are still pending, because the provider couldn't be reached
+     */
+    synchronized boolean flush(ContentResolver cr) {
+        if (mPendingWrites.isEmpty()) {
+            return true;
+        }
+
+        ArrayList<Long> ids = new ArrayList<Long>(mPendingWrites.keySet());
+        ArrayList<ContentProviderOperation> ops =
+                new ArrayList<ContentProviderOperation>(ids.size());
+        for (Long id : ids) {
+            ops.add(buildOperation(id, mPendingWrites.get(id)));
+        }
+
+        boolean applied = false;
+        try {
+            cr.applyBatch(LauncherProvider.AUTHORITY, ops);
+            mPendingWrites.clear();
+            applied = true;
+        } catch (RemoteException e) {
+            Log.e(TAG, "Error applying " + ops.size() + " workspace writes, will retry", e);
+        } catch (OperationApplicationException e) {
+            // The batch was rolled back as a whole
+            Log.e(TAG, "Error applying " + ops.size() + " workspace writes together", e);
+            applied = applyOneByOne(cr, ids, ops);
+        }
+        if (applied && mNotify) {
+            cr.notifyChange(LauncherSettings.Favorites.CONTENT_URI, null);
+            mNotify = false;
+        }
+        return mPendingWrites.isEmpty();
+    }
+
+    /**
+     * @return true if any of the writes was applied
+     */
+    private boolean applyOneByOne(ContentResolver cr, ArrayList<Long> ids,
+            ArrayList<ContentProviderOperation> ops) {
+        boolean applied = false;
+        ArrayList<ContentProviderOperation> single = new ArrayList<ContentProviderOperation>(1);
+        for (int i = 0; i < ops.size(); i++) {
+            single.clear();
+            single.add(ops.get(i));
+            try {
+                cr.applyBatch(LauncherProvider.AUTHORITY, single);
+                applied = true;
+            } catch (RemoteException e) {
+                Log.e(TAG, "Error applying workspace writes, will retry", e);
+                break;
+            } catch (OperationApplicationException e) {
+                Log.e(TAG, "Dropping workspace write of item " + ids.get(i), e);
+            }
+            mPendingWrites.remove(ids.get(i));
+        }
+        return applied;
+    }
+
+    private static ContentProviderOperation buildOperation(long id, PendingWrite write) {
+        switch (write.op) {
+            case OP_INSERT:
+                return ContentProviderOperation.newInsert(
+                        LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION)
+                        .withValues(write.values).build();
+            case OP_UPDATE:
+                return ContentProviderOperation.newUpdate(
+                        LauncherSettings.Favorites.getContentUri(id, false))
+                        .withValues(write.values).build();
+            case OP_DELETE:
+            default:
+                return ContentProviderOperation.newDelete(
+                        LauncherSettings.Favorites.getContentUri(id, false)).build();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.graphics;
+
+/**
+ * Stand-in of the Android class, for the benchmarks. Holds ARGB_8888 pixels in an array.
+ */
+public final class Bitmap {
+    public enum Config {
+        ARGB_8888
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mPixels;
+
+    private Bitmap(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mPixels = new int[width * height];
+    }
+
+    public static Bitmap createBitmap(int[] colors, int width, int height, Config config) {
+        Bitmap bitmap = new Bitmap(width, height);
+        System.arraycopy(colors, 0, bitmap.mPixels, 0, width * height);
+        return bitmap;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getPixel(int x, int y) {
+        return mPixels[y * mWidth + x];
+    }
+
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width,
+            int height) {
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(mPixels, (y + row) * mWidth + x, pixels, offset + row * stride,
+                    width);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.graphics;
+
+/**
+ * Stand-in of the Android class, for the benchmarks.
+ */
+public class Color {
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    public static int HSVToColor(float[] hsv) {
+        final float h = ((hsv[0] % 360 + 360) % 360) / 60;
+        final float s = hsv[1];
+        final float v = hsv[2];
+        final int sector = (int) h;
+        final float f = h - sector;
+        final float p = v * (1 - s);
+        final float q = v * (1 - s * f);
+        final float t = v * (1 - s * (1 - f));
+        float r, g, b;
+        switch (sector) {
+            case 0: r = v; g = t; b = p; break;
+            case 1: r = q; g = v; b = p; break;
+            case 2: r = p; g = v; b = t; break;
+            case 3: r = p; g = q; b = v; break;
+            case 4: r = t; g = p; b = v; break;
+            default: r = v; g = p; b = q; break;
+        }
+        return 0xFF000000 | (Math.round(r * 255) << 16) | (Math.round(g * 255) << 8)
+                | Math.round(b * 255);
+    }
+
+    /**
+     * Converts the RGB color to hue in [0, 360), saturation and value in [0, 1].
+     */
+    public static void colorToHSV(int color, float[] hsv) {
+        final int r = red(color);
+        final int g = green(color);
+        final int b = blue(color);
+        final int max = Math.max(r, Math.max(g, b));
+        final int min = Math.min(r, Math.min(g, b));
+        final float delta = max - min;
+
+        float hue;
+        if (delta == 0) {
+            hue = 0;
+        } else if (max == r) {
+            hue = 60 * (((g - b) / delta) % 6);
+        } else if (max == g) {
+            hue = 60 * (((b - r) / delta) + 2);
+        } else {
+            hue = 60 * (((r - g) / delta) + 4);
+        }
+        if (hue < 0) {
+            hue += 360;
+        }
+        hsv[0] = hue;
+        hsv[1] = max == 0 ? 0 : delta / max;
+        hsv[2] = max / 255f;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Stand-in of the support library class, for the benchmarks. Like it, keeps the entries in arrays
+ * sorted by the hash codes of the keys, and finds them by binary search.
+ */
+public class ArrayMap<K, V> extends AbstractMap<K, V> {
+    private int[] mHashes;
+    private Object[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+
+    public ArrayMap() {
+        this(4);
+    }
+
+    public ArrayMap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mHashes = new int[capacity];
+        mKeys = new Object[capacity];
+        mValues = new Object[capacity];
+    }
+
+    private int indexOf(Object key) {
+        final int hash = key == null ? 0 : key.hashCode();
+        int i = Arrays.binarySearch(mHashes, 0, mSize, hash);
+        if (i < 0) {
+            return i;
+        }
+        // Look through the keys which share the hash code, on both sides of the one found
+        int end = i;
+        while (end < mSize && mHashes[end] == hash) {
+            if (eq(mKeys[end], key)) return end;
+            end++;
+        }
+        for (int j = i - 1; j >= 0 && mHashes[j] == hash; j--) {
+            if (eq(mKeys[j], key)) return j;
+        }
+        return ~end;
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @SuppressWarnings("unchecked")
+    public K keyAt(int index) {
+        return (K) mKeys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        return (V) mValues[index];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) mValues[i];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            V old = (V) mValues[i];
+            mValues[i] = value;
+            return old;
+        }
+        i = ~i;
+        if (mSize == mHashes.length) {
+            int capacity = mSize * 2;
+            mHashes = Arrays.copyOf(mHashes, capacity);
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+        System.arraycopy(mHashes, i, mHashes, i + 1, mSize - i);
+        System.arraycopy(mKeys, i, mKeys, i + 1, mSize - i);
+        System.arraycopy(mValues, i, mValues, i + 1, mSize - i);
+        mHashes[i] = key == null ? 0 : key.hashCode();
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(mKeys, 0, mSize, null);
+        Arrays.fill(mValues, 0, mSize, null);
+        mSize = 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public int size() {
+                return mSize;
+            }
+
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<Entry<K, V>>() {
+                    private int mIndex;
+
+                    @Override
+                    public boolean hasNext() {
+                        return mIndex < mSize;
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        if (mIndex >= mSize) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<K, V> entry = new SimpleEntry<K, V>(keyAt(mIndex), valueAt(mIndex));
+                        mIndex++;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
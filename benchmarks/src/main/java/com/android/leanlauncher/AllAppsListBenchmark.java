@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.content.Context;
+
+import com.android.leanlauncher.compat.LauncherActivityInfoCompat;
+import com.android.leanlauncher.compat.LauncherAppsCompat;
+import com.android.leanlauncher.compat.UserHandleCompat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changes to the list of all apps, as done when the apps are loaded and when packages are
+ * updated, removed and added again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllAppsListBenchmark {
+    @Param({"100", "500"})
+    public int appCount;
+
+    private final Context mContext = new Context();
+    private final IconCache mIconCache = new IconCache();
+    private final UserHandleCompat mUser = UserHandleCompat.myUserHandle();
+    private ArrayList<LauncherActivityInfoCompat> mActivities;
+    private ArrayList<AppInfo> mApps;
+    private AllAppsList mList;
+    // The package changed by the next benchmark call, so that all of them get changed in turn
+    private int mNextPackage;
+
+    @Setup
+    public void setUp() {
+        mActivities = BenchmarkApps.createActivities(appCount);
+        mApps = new ArrayList<AppInfo>(appCount);
+        final LauncherAppsCompat launcherApps = LauncherAppsCompat.getInstance(mContext);
+        for (LauncherActivityInfoCompat activity : mActivities) {
+            launcherApps.setActivityList(activity.getComponentName().getPackageName(),
+                    Collections.singletonList(activity));
+            mApps.add(new AppInfo(mContext, activity, mUser, mIconCache, null));
+        }
+        mList = new AllAppsList(mIconCache);
+        for (AppInfo app : mApps) {
+            mList.add(app);
+        }
+        mList.added.clear();
+    }
+
+    private String nextPackage() {
+        final String packageName = mActivities.get(mNextPackage).getComponentName()
+                .getPackageName();
+        mNextPackage = (mNextPackage + 1) % mActivities.size();
+        return packageName;
+    }
+
+    @Benchmark
+    public AllAppsList addAll() {
+        AllAppsList list = new AllAppsList(mIconCache);
+        for (AppInfo app : mApps) {
+            list.add(app);
+        }
+        return list;
+    }
+
+    @Benchmark
+    public AllAppsList updatePackage() {
+        mList.updatePackage(mContext, nextPackage(), mUser);
+        mList.modified.clear();
+        return mList;
+    }
+
+    @Benchmark
+    public AllAppsList removeAndAddPackage() {
+        final String packageName = nextPackage();
+        mList.removePackage(packageName, mUser, true);
+        mList.addPackage(mContext, packageName, mUser);
+        mList.removed.clear();
+        mList.added.clear();
+        return mList;
+    }
+}
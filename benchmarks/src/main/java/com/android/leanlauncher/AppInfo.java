@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+
+import com.android.leanlauncher.compat.LauncherActivityInfoCompat;
+import com.android.leanlauncher.compat.UserHandleCompat;
+
+import java.text.CollationKey;
+import java.text.Collator;
+
+/**
+ * Stand-in of the launcher class, for the benchmarks. Only has the fields that the sorting, the
+ * search and the list of apps use.
+ */
+public class AppInfo {
+    CharSequence title;
+    UserHandleCompat user;
+    ComponentName componentName;
+    Intent intent;
+
+    private final AppNameComparator.TitleKey mTitleKey = new AppNameComparator.TitleKey();
+
+    AppInfo(CharSequence title, ComponentName componentName) {
+        this.title = title;
+        this.componentName = componentName;
+        this.user = UserHandleCompat.myUserHandle();
+        this.intent = new Intent(componentName);
+    }
+
+    AppInfo(Context context, LauncherActivityInfoCompat info, UserHandleCompat user,
+            IconCache iconCache, Object labelCache) {
+        this.componentName = info.getComponentName();
+        iconCache.getTitleAndIcon(this, info, labelCache);
+        this.intent = new Intent(componentName);
+        this.user = user;
+    }
+
+    CollationKey getTitleKey(Collator collator) {
+        return mTitleKey.get(title, collator);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting of all apps by title, with the collation keys cached in the apps, against comparing
+ * the titles with the collator every time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppNameComparatorBenchmark {
+    @Param({"100", "500"})
+    public int appCount;
+
+    private ArrayList<AppInfo> mApps;
+    private Comparator<AppInfo> mCollatorComparator;
+
+    @Setup
+    public void setUp() {
+        mApps = BenchmarkApps.create(appCount);
+        final Collator collator = Collator.getInstance();
+        mCollatorComparator = new Comparator<AppInfo>() {
+            @Override
+            public int compare(AppInfo a, AppInfo b) {
+                return collator.compare(a.title.toString(), b.title.toString());
+            }
+        };
+    }
+
+    @Benchmark
+    public ArrayList<AppInfo> sortByCachedKeys() {
+        ArrayList<AppInfo> apps = new ArrayList<AppInfo>(mApps);
+        Collections.sort(apps, AppNameComparator.INSTANCE);
+        return apps;
+    }
+
+    @Benchmark
+    public ArrayList<AppInfo> sortByCollator() {
+        ArrayList<AppInfo> apps = new ArrayList<AppInfo>(mApps);
+        Collections.sort(apps, mCollatorComparator);
+        return apps;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexing of all apps, and filtering them while a query is typed, as the search box does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppSearchIndexBenchmark {
+    @Param({"100", "500"})
+    public int appCount;
+
+    /**
+     * The query, which doesn't apply to indexing.
+     */
+    @State(Scope.Thread)
+    public static class Query {
+        @Param({"ma", "message", "zz"})
+        public String query;
+    }
+
+    private ArrayList<AppInfo> mApps;
+    private AppSearchIndex mIndex;
+
+    @Setup
+    public void setUp() {
+        mApps = BenchmarkApps.create(appCount);
+        mIndex = new AppSearchIndex();
+        for (AppInfo app : mApps) {
+            mIndex.add(app);
+        }
+    }
+
+    @Benchmark
+    public AppSearchIndex index() {
+        AppSearchIndex index = new AppSearchIndex();
+        for (AppInfo app : mApps) {
+            index.add(app);
+        }
+        return index;
+    }
+
+    @Benchmark
+    public AppSearchIndex.Result search(Query query) {
+        return mIndex.search(query.query, null);
+    }
+
+    /**
+     * Searches every prefix of the query, narrowing down the previous result.
+     */
+    @Benchmark
+    public AppSearchIndex.Result type(Query query) {
+        final String text = query.query;
+        AppSearchIndex.Result result = null;
+        for (int i = 1; i <= text.length(); i++) {
+            result = mIndex.search(text.substring(0, i), result);
+        }
+        return result;
+    }
+}
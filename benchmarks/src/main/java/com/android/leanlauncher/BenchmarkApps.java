@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.content.ComponentName;
+
+import com.android.leanlauncher.compat.LauncherActivityInfoCompat;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates apps with titles like the ones of a phone, for the benchmarks.
+ */
+final class BenchmarkApps {
+    private static final String[] WORDS = {
+            "Calendar", "Camera", "Chrome", "Clock", "Contacts", "Drive", "Files", "Gallery",
+            "Gmail", "Keep", "Maps", "Messages", "Music", "News", "Notes", "Phone", "Photos",
+            "Play", "Podcasts", "Recorder", "Settings", "Sheets", "Slides", "Store", "Translate",
+            "Wallet", "Weather", "YouTube", "Caf\u00e9", "\u00c9cran", "M\u00e9t\u00e9o", "\u00dcbersetzer", "Zo\u00eb",
+            "Banking", "Fitness", "Reader", "Radio", "Scanner", "Timer", "Tasks", "Video",
+    };
+
+    private BenchmarkApps() {
+    }
+
+    /**
+     * Returns the launcher activities of as many packages, in a random but reproducible order.
+     */
+    static ArrayList<LauncherActivityInfoCompat> createActivities(int count) {
+        final Random random = new Random(count);
+        final ArrayList<LauncherActivityInfoCompat> activities =
+                new ArrayList<LauncherActivityInfoCompat>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+            if (random.nextBoolean()) {
+                title.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            ComponentName cn = new ComponentName("com.example.app" + i,
+                    "com.example.app" + i + ".MainActivity");
+            activities.add(new LauncherActivityInfoCompat(cn, title.toString()));
+        }
+        return activities;
+    }
+
+    /**
+     * Returns the apps of {@link #createActivities}.
+     */
+    static ArrayList<AppInfo> create(int count) {
+        final ArrayList<AppInfo> apps = new ArrayList<AppInfo>(count);
+        for (LauncherActivityInfoCompat activity : createActivities(count)) {
+            apps.add(new AppInfo(activity.getLabel(), activity.getComponentName()));
+        }
+        return apps;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dominant color of an icon: a round shape shaded across two hues, on a transparent background.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DominantColorsBenchmark {
+    // Icon sizes of mdpi, xxhdpi and xxxhdpi
+    @Param({"48", "144", "192"})
+    public int iconSize;
+
+    // The samples of IconCache, and a full scan of the largest icon
+    @Param({"20", "40000"})
+    public int samples;
+
+    private Bitmap mIcon;
+
+    @Setup
+    public void setUp() {
+        final int size = iconSize;
+        final int[] pixels = new int[size * size];
+        final float[] hsv = new float[3];
+        final float radius = size / 2f;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float dx = x - radius;
+                float dy = y - radius;
+                if (dx * dx + dy * dy > radius * radius) {
+                    continue;
+                }
+                hsv[0] = x < y ? 210 : 30;
+                hsv[1] = 0.4f + 0.6f * x / size;
+                hsv[2] = 0.5f + 0.5f * y / size;
+                pixels[y * size + x] = Color.HSVToColor(hsv);
+            }
+        }
+        mIcon = Bitmap.createBitmap(pixels, size, size, Bitmap.Config.ARGB_8888);
+    }
+
+    @Benchmark
+    public int findDominantColorByHue() {
+        return DominantColors.findDominantColorByHue(mIcon, samples);
+    }
+}
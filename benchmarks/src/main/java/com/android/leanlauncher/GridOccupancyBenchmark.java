@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search of vacant areas in a workspace page, on the grids of the phone and tablet profiles of
+ * {@link DynamicGrid}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridOccupancyBenchmark {
+    @Param({"Nexus 5", "Large Phone", "Nexus 10", "20-inch Tablet"})
+    public String profile;
+
+    @Param({"1x1", "2x2", "4x1"})
+    public String span;
+
+    private int mSpanX;
+    private int mSpanY;
+    // Filled with icons from the top, except for the last row, as when adding to a page
+    private GridOccupancy mFilled;
+    // Half of the cells occupied, as when looking for the nearest area to a drop
+    private GridOccupancy mScattered;
+    private final int[] mVacant = new int[2];
+
+    @Setup
+    public void setUp() {
+        final int countX;
+        final int countY;
+        switch (profile) {
+            case "Nexus 5":
+                countX = 5;
+                countY = 9;
+                break;
+            case "Large Phone":
+                countX = 6;
+                countY = 9;
+                break;
+            case "Nexus 10":
+                countX = 7;
+                countY = 9;
+                break;
+            case "20-inch Tablet":
+                countX = 8;
+                countY = 11;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown profile: " + profile);
+        }
+        String[] spans = span.split("x");
+        mSpanX = Integer.parseInt(spans[0]);
+        mSpanY = Integer.parseInt(spans[1]);
+
+        mFilled = new GridOccupancy(countX, countY);
+        mFilled.markCells(0, 0, countX, countY - 1, true);
+
+        mScattered = new GridOccupancy(countX, countY);
+        Random random = new Random(countX * countY);
+        for (int y = 0; y < countY; y++) {
+            for (int x = 0; x < countX; x++) {
+                mScattered.markCells(x, y, 1, 1, random.nextBoolean());
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean findVacantCell() {
+        return mFilled.findVacantCell(mVacant, mSpanX, mSpanY);
+    }
+
+    /**
+     * Tests every position of the span, as the nearest area search does.
+     */
+    @Benchmark
+    public int isRegionVacant() {
+        final GridOccupancy occupied = mScattered;
+        int vacant = 0;
+        for (int y = 0; y + mSpanY <= occupied.countY; y++) {
+            for (int x = 0; x + mSpanX <= occupied.countX; x++) {
+                if (occupied.isRegionVacant(x, y, mSpanX, mSpanY)) {
+                    vacant++;
+                }
+            }
+        }
+        return vacant;
+    }
+
+    /**
+     * Finds every vacant position of the span, skipping past the occupied columns.
+     */
+    @Benchmark
+    public int lastOccupiedColumn() {
+        final GridOccupancy occupied = mScattered;
+        int vacant = 0;
+        for (int y = 0; y + mSpanY <= occupied.countY; y++) {
+            for (int x = 0; x + mSpanX <= occupied.countX; x++) {
+                int lastOccupied = occupied.lastOccupiedColumn(x, y, mSpanX, mSpanY);
+                if (lastOccupied < 0) {
+                    vacant++;
+                } else {
+                    x = lastOccupied;
+                }
+            }
+        }
+        return vacant;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import android.content.ComponentName;
+
+import com.android.leanlauncher.compat.LauncherActivityInfoCompat;
+import com.android.leanlauncher.compat.UserHandleCompat;
+
+/**
+ * Stand-in of the launcher class, for the benchmarks. Only keeps the titles, no icons.
+ */
+public class IconCache {
+    public void remove(ComponentName componentName, UserHandleCompat user) {
+    }
+
+    public void remove(String packageName, UserHandleCompat user) {
+    }
+
+    public void getTitleAndIcon(AppInfo application, LauncherActivityInfoCompat info,
+            Object labelCache) {
+        application.title = info.getLabel();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.leanlauncher;
+
+import com.android.leanlauncher.ReorderSolver.CellAndSpan;
+import com.android.leanlauncher.ReorderSolver.ItemConfiguration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reordering of a full workspace page to make room for an item dragged over it, on the grids of
+ * the phone and tablet profiles of {@link DynamicGrid}. Each invocation drags over the next cell
+ * of the page, as a drag moving across it does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReorderSolverBenchmark {
+    // Size of a cell, in the pixels the solver is given
+    private static final int CELL_SIZE = 100;
+
+    @Param({"Nexus 5", "Large Phone", "Nexus 10", "20-inch Tablet"})
+    public String profile;
+
+    @Param({"1x1", "2x2"})
+    public String span;
+
+    /**
+     * An item of the page, in place of the view of a shortcut or widget.
+     */
+    static final class Item {
+        final int cellX;
+        final int cellY;
+        final int spanX;
+        final int spanY;
+
+        Item(int cellX, int cellY, int spanX, int spanY) {
+            this.cellX = cellX;
+            this.cellY = cellY;
+            this.spanX = spanX;
+            this.spanY = spanY;
+        }
+    }
+
+    private int mCountX;
+    private int mCountY;
+    private int mSpanX;
+    private int mSpanY;
+    private final ArrayList<Item> mItems = new ArrayList<Item>();
+    private ReorderSolver<Item> mSolver;
+    private final int[] mDirection = new int[2];
+    private int mNextCell;
+
+    @Setup
+    public void setUp() {
+        switch (profile) {
+            case "Nexus 5":
+                mCountX = 5;
+                mCountY = 9;
+                break;
+            case "Large Phone":
+                mCountX = 6;
+                mCountY = 9;
+                break;
+            case "Nexus 10":
+                mCountX = 7;
+                mCountY = 9;
+                break;
+            case "20-inch Tablet":
+                mCountX = 8;
+                mCountY = 11;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown profile: " + profile);
+        }
+        String[] spans = span.split("x");
+        mSpanX = Integer.parseInt(spans[0]);
+        mSpanY = Integer.parseInt(spans[1]);
+
+        // A page of widgets and icons, with the last row and a few cells left vacant
+        final GridOccupancy occupied = new GridOccupancy(mCountX, mCountY);
+        add(new Item(0, 0, mCountX, 1), occupied);
+        add(new Item(0, 1, 2, 2), occupied);
+        add(new Item(mCountX - 2, 3, 2, 2), occupied);
+        Random random = new Random(mCountX * mCountY);
+        for (int y = 0; y < mCountY - 1; y++) {
+            for (int x = 0; x < mCountX; x++) {
+                if (!occupied.isOccupied(x, y) && random.nextInt(4) != 0) {
+                    add(new Item(x, y, 1, 1), occupied);
+                }
+            }
+        }
+
+        final GridOccupancy tmpOccupied = new GridOccupancy(mCountX, mCountY);
+        mSolver = new ReorderSolver<Item>(occupied, tmpOccupied) {
+            @Override
+            boolean canReorder(Item item) {
+                return true;
+            }
+
+            @Override
+            int[] findNearestArea(int pixelX, int pixelY, int spanX, int spanY, int[] result) {
+                // The cell under the top left corner of the span, centered on the pixel
+                result[0] = clamp((pixelX - (spanX - 1) * CELL_SIZE / 2) / CELL_SIZE,
+                        mCountX - spanX);
+                result[1] = clamp((pixelY - (spanY - 1) * CELL_SIZE / 2) / CELL_SIZE,
+                        mCountY - spanY);
+                return result;
+            }
+
+            @Override
+            void copyCurrentStateToSolution(ItemConfiguration<Item> solution) {
+                for (Item item : mItems) {
+                    solution.add(item, new CellAndSpan(item.cellX, item.cellY, item.spanX,
+                            item.spanY));
+                }
+            }
+        };
+    }
+
+    private void add(Item item, GridOccupancy occupied) {
+        mItems.add(item);
+        occupied.markCells(item.cellX, item.cellY, item.spanX, item.spanY, true);
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+
+    private ItemConfiguration<Item> dragOverNextCell() {
+        final int cell = mNextCell;
+        mNextCell = (cell + 1) % (mCountX * mCountY);
+        final int cellX = cell % mCountX;
+        final int cellY = cell / mCountX;
+        // Drag over the right half of the cell, pushing the items to the left
+        mDirection[0] = -1;
+        mDirection[1] = 0;
+        return mSolver.findReorderSolution(cellX * CELL_SIZE + CELL_SIZE * 3 / 4,
+                cellY * CELL_SIZE + CELL_SIZE / 2, 1, 1, mSpanX, mSpanY, mDirection, null, true,
+                new ItemConfiguration<Item>());
+    }
+
+    /**
+     * Solves every drag over, as when the page has just changed.
+     */
+    @Benchmark
+    public ItemConfiguration<Item> findReorderSolution() {
+        mSolver.clearReorderSolutions();
+        return dragOverNextCell();
+    }
+
+    /**
+     * Drags over cells already solved during the drag, as when it goes back and forth.
+     */
+    @Benchmark
+    public ItemConfiguration<Item> findReorderSolutionMemoized() {
+        return dragOverNextCell();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Reading a widget preview from its raw pixel file, as WidgetPreviewLoader.readFromDb() does,
+ * against decoding the same preview from a PNG blob, as previews used to be stored. The preview
+ * is a card with a gradient header and rows of flat bars, like the text of a widget.
+ *
+ * The PNG decoder of the JDK stands in for the one of the device, so it is the ratio of the two,
+ * rather than their absolute times, which carries over. The preview file is in the page cache
+ * after the first read, as it usually is on the device too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WidgetPreviewReadBenchmark {
+    // Preview widths of a phone and of a tablet, previews are 3:2
+    @Param({"360", "720"})
+    public int previewWidth;
+
+    private File mPreviewFile;
+    private byte[] mPngBlob;
+    // The pixels of the bitmap the preview is read into, which the loader reuses
+    private ByteBuffer mPixels;
+
+    @Setup
+    public void setUp() throws IOException {
+        final int width = previewWidth;
+        final int height = previewWidth * 2 / 3;
+        final int[] colors = makePreview(width, height);
+
+        // ARGB_8888 bitmaps hold their pixels as RGBA bytes
+        mPixels = ByteBuffer.allocateDirect(width * height * 4);
+        for (int color : colors) {
+            mPixels.put((byte) (color >> 16)).put((byte) (color >> 8)).put((byte) color)
+                    .put((byte) (color >>> 24));
+        }
+        mPixels.flip();
+        mPreviewFile = File.createTempFile("preview", ".raw");
+        FileOutputStream out = new FileOutputStream(mPreviewFile);
+        try {
+            FileChannel channel = out.getChannel();
+            while (mPixels.hasRemaining()) {
+                channel.write(mPixels);
+            }
+        } finally {
+            out.close();
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, colors, 0, width);
+        ImageIO.setUseCache(false);
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", blob);
+        mPngBlob = blob.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPreviewFile.delete();
+    }
+
+    private static int[] makePreview(int width, int height) {
+        final int[] colors = new int[width * height];
+        final int margin = width / 20;
+        final int header = height / 4;
+        final int row = Math.max(height / 12, 4);
+        for (int y = margin; y < height - margin; y++) {
+            for (int x = margin; x < width - margin; x++) {
+                final int color;
+                if (y < header) {
+                    int shade = 0x40 + 0x80 * (y - margin) / header;
+                    color = 0xff000000 | (shade << 8) | (0xc0 - shade / 2);
+                } else if ((y - header) % row < row / 2 && x < width * 3 / 4) {
+                    color = 0xff424242;
+                } else {
+                    color = 0xfffafafa;
+                }
+                colors[y * width + x] = color;
+            }
+        }
+        return colors;
+    }
+
+    @Benchmark
+    public ByteBuffer readPreviewFile() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mPreviewFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() != mPixels.capacity()) {
+                throw new IOException("Unexpected size " + channel.size());
+            }
+            // Bitmap.copyPixelsFromBuffer()
+            mPixels.clear();
+            mPixels.put(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            return mPixels;
+        } finally {
+            file.close();
+        }
+    }
+
+    @Benchmark
+    public BufferedImage decodePngBlob() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(mPngBlob));
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher.compat;
+
+import android.content.ComponentName;
+
+/**
+ * Stand-in of the launcher class, for the benchmarks.
+ */
+public class LauncherActivityInfoCompat {
+    private final ComponentName mComponentName;
+    private final CharSequence mLabel;
+
+    public LauncherActivityInfoCompat(ComponentName componentName, CharSequence label) {
+        mComponentName = componentName;
+        mLabel = label;
+    }
+
+    public ComponentName getComponentName() {
+        return mComponentName;
+    }
+
+    public UserHandleCompat getUser() {
+        return UserHandleCompat.myUserHandle();
+    }
+
+    public CharSequence getLabel() {
+        return mLabel;
+    }
+}
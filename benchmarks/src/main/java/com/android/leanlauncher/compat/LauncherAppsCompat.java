@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher.compat;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Stand-in of the launcher class, for the benchmarks. The activities of each package are set by
+ * the benchmark instead of being queried from the package manager.
+ */
+public class LauncherAppsCompat {
+    private static final LauncherAppsCompat sInstance = new LauncherAppsCompat();
+
+    private final HashMap<String, List<LauncherActivityInfoCompat>> mActivities =
+            new HashMap<String, List<LauncherActivityInfoCompat>>();
+
+    public static LauncherAppsCompat getInstance(Context context) {
+        return sInstance;
+    }
+
+    public void setActivityList(String packageName, List<LauncherActivityInfoCompat> activities) {
+        mActivities.put(packageName, new ArrayList<LauncherActivityInfoCompat>(activities));
+    }
+
+    public List<LauncherActivityInfoCompat> getActivityList(String packageName,
+            UserHandleCompat user) {
+        List<LauncherActivityInfoCompat> activities = mActivities.get(packageName);
+        return activities != null ? activities
+                : Collections.<LauncherActivityInfoCompat>emptyList();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 Kumaresan Rajeswaran
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.leanlauncher.compat;
+
+/**
+ * Stand-in of the launcher class, for the benchmarks. All the apps belong to the same user.
+ */
+public class UserHandleCompat {
+    private static final UserHandleCompat sMyUser = new UserHandleCompat();
+
+    private UserHandleCompat() {
+    }
+
+    public static UserHandleCompat myUserHandle() {
+        return sMyUser;
+    }
+
+    @Override
+    public String toString() {
+        return "";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof UserHandleCompat;
+    }
+
+    @Override
+    public int hashCode() {
+        return 0;
+    }
+}